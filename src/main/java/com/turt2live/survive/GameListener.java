@@ -1,26 +1,33 @@
 package com.turt2live.survive;
 
+import com.turt2live.survive.temperature.HeatSourceIndex;
+import com.turt2live.survive.temperature.PlayerStateStore;
+import com.turt2live.survive.temperature.PlayerSurvivalState;
+import com.turt2live.survive.temperature.SidebarRenderer;
+import com.turt2live.survive.temperature.SweepBuckets;
+import com.turt2live.survive.temperature.TemperatureCalculator;
+import com.turt2live.survive.temperature.TemperatureSample;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
-import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.scoreboard.DisplaySlot;
 import org.bukkit.scoreboard.Objective;
 import org.bukkit.scoreboard.Score;
 import org.bukkit.scoreboard.Scoreboard;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * The central game listener for operating the mechanics of the
@@ -31,6 +38,9 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class GameListener implements Listener {
 
+    private static final int SWEEP_TICKS = 20;
+    private static final int TIMING_REPORT_TICKS = 20 * 60;
+
     // Not a real temperature scale
     private int shiverTemp = -5;
     private int hypothermiaTemp = -20;
@@ -39,7 +49,14 @@ public class GameListener implements Listener {
     private String bodyTempKey = ChatColor.GREEN + "Body";
     private String worldTempKey = ChatColor.GRAY + "World";
     private static Map<Material, Double> armorWeights = new HashMap<Material, Double>();
-    private static ConcurrentMap<UUID, Double> distances = new ConcurrentHashMap<UUID, Double>();
+    private final Survive plugin;
+    private final TemperatureCalculator calculator;
+    private final PlayerStateStore states = new PlayerStateStore();
+    private final SidebarRenderer sidebar;
+    private final int bodyTempEntry, worldTempEntry;
+    private final SweepBuckets buckets = new SweepBuckets(SWEEP_TICKS);
+    private long sweepTick = 0;
+    private final Location trackedLocation = new Location(null, 0, 0, 0);
 
     static {
         armorWeights.put(Material.LEATHER_HELMET, 0.2);
@@ -69,133 +86,152 @@ public class GameListener implements Listener {
     }
 
     public GameListener(final Survive plugin) {
+        this.plugin = plugin;
+
+        // Temperature is off until it has been balanced, no need to index anything until then
+        calculator = plugin.getConfig().getBoolean("temperature.enabled", false) ? new TemperatureCalculator(new HeatSourceIndex(plugin)) : null;
+
+        // Sent scores only matter around the thresholds where something happens to the player
+        sidebar = new SidebarRenderer(Math.max(plugin.getConfig().getInt("temperature.sidebar.max-updates-per-tick", 200), 1));
+        bodyTempEntry = sidebar.addEntry(bodyTempKey, Math.max(plugin.getConfig().getInt("temperature.sidebar.min-change", 2), 1),
+                hypothermiaTemp - 1, shiverTemp - 1, sweatingTemp, burningTemp);
+        worldTempEntry = sidebar.addEntry(worldTempKey, 1);
+
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            sidebar.attach(states.create(player.getUniqueId()).getSlot(), player, 1);
+            if (calculator != null) buckets.add(player.getUniqueId());
+        }
+
+        if (calculator == null) return;
+
+        final boolean logTimings = plugin.getConfig().getBoolean("temperature.log-timings", false);
+
+        // Every player is checked once every SWEEP_TICKS, a bucket of them each tick
         plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, new Runnable() {
             @Override
             public void run() {
-                // check all players for temperature
-                for (Player player : plugin.getServer().getOnlinePlayers()) {
-                    adjustTemperature(player);
+                trackMovement();
+
+                int bucket = (int) (sweepTick++ % SWEEP_TICKS);
+
+                List<Player> players = new ArrayList<Player>(buckets.getPlayerCount(bucket));
+                for (UUID uuid : buckets.getPlayers(bucket)) {
+                    Player player = plugin.getServer().getPlayer(uuid);
+                    if (player != null) players.add(player);
                 }
-            }
-        }, 0L, 20L * 1);
-    }
+                adjustTemperatures(players, bucket);
+                sidebar.flush();
 
-    private void adjustTemperature(Player player) {
-        if (true) return; // Disable temperature for now
-
-        int worldTemp;
-
-        long time = player.getWorld().getTime();
-        if (time > 2000 && time < 10000) worldTemp = 20;
-        else if (time < 22000 && time > 14000) worldTemp = -20;
-        else worldTemp = 0;
-
-        player.getScoreboard().getObjective(DisplaySlot.SIDEBAR).getScore(worldTempKey).setScore(worldTemp);
-
-        // Do actual temperature calculation
-        int temperature;
-        if (player.isDead()) temperature = -128;
-        else {
-            double warmth = 0;
-            double cold = 0;
-
-            // Find what is warm/cold around the player
-            int r = 3;
-            for (int x = -r; x < r; x++) {
-                for (int y = -r; y < r; y++) {
-                    for (int z = -r; z < r; z++) {
-                        Block block = player.getLocation().clone().add(x, y, z).getBlock();
-                        double distance = block.getLocation().distanceSquared(player.getLocation());
-
-                        switch (block.getType()) {
-                            // WARM
-                            case STATIONARY_LAVA:
-                            case LAVA:
-                                warmth += distance * 2;
-                                break;
-                            case FIRE:
-                                warmth += distance;
-                                break;
-                            case BURNING_FURNACE:
-                            case TORCH:
-                                warmth += distance / 2;
-                                break;
-
-                            // COLD
-                            case PACKED_ICE:
-                                cold += distance * 2;
-                                break;
-                            case ICE:
-                                cold += distance;
-                                break;
-                            case STATIONARY_WATER:
-                            case WATER:
-                                cold += distance / 2;
-                                break;
-                        }
-                    }
+                if (logTimings && sweepTick % TIMING_REPORT_TICKS == 0) {
+                    plugin.getLogger().info("Temperature buckets (players avg/max): " + buckets.describe());
+                    plugin.getLogger().info("Temperature sidebar: " + sidebar.describe());
+                    buckets.resetTimings();
                 }
             }
+        }, 0L, 1L);
+    }
 
-            // Check item weight
-            // TODO: If time, add mapping so a pickaxe weighs more than diamonds
-            double itemWeight = 0;
+    private void trackMovement() {
+        // Sampled once a tick rather than on every move event, see PlayerSurvivalState#track
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            PlayerSurvivalState state = states.get(player.getUniqueId());
+            if (state == null) continue;
 
-            for (ItemStack item : player.getInventory().getContents()) {
-                if (item != null)
-                    itemWeight += item.getAmount();
-            }
-            itemWeight /= 500;
+            Location location = player.getLocation(trackedLocation);
+            state.track(location.getWorld().getUID(), location.getX(), location.getY(), location.getZ());
+        }
+    }
+
+    private void adjustTemperatures(List<Player> players, final int bucket) {
+        if (players.isEmpty()) return;
 
-            // Now check their armor weight
-            double armorWeight = 0;
-            armorWeight += getArmorWeight(player.getInventory().getHelmet());
-            armorWeight += getArmorWeight(player.getInventory().getChestplate());
-            armorWeight += getArmorWeight(player.getInventory().getLeggings());
-            armorWeight += getArmorWeight(player.getInventory().getBoots());
+        // Only what has to come from the server is read here, the maths happens off the main thread
+        final long started = System.nanoTime();
+        final List<TemperatureSample> samples = new ArrayList<TemperatureSample>(players.size());
+        for (Player player : players) {
+            PlayerSurvivalState state = states.get(player.getUniqueId());
+            if (state != null) samples.add(sample(player, state));
+        }
+        final long sampleNanos = System.nanoTime() - started;
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                final int[] temperatures = new int[samples.size()];
+                for (int i = 0; i < temperatures.length; i++) {
+                    temperatures[i] = calculator.calculate(samples.get(i));
+                }
 
-            // Armor and item weight are directly related to how much the player has moved
-            double distance = distances.containsKey(player.getUniqueId()) ? distances.get(player.getUniqueId()) : 0;
-            distances.remove(player.getUniqueId());
+                plugin.getServer().getScheduler().runTask(plugin, new Runnable() {
+                    @Override
+                    public void run() {
+                        long applyStarted = System.nanoTime();
+                        for (int i = 0; i < temperatures.length; i++) {
+                            TemperatureSample sample = samples.get(i);
+                            Player player = plugin.getServer().getPlayer(sample.getPlayer());
+                            PlayerSurvivalState state = states.get(sample.getPlayer());
+                            if (player != null && state != null)
+                                adjustTemperature(player, state, TemperatureCalculator.getWorldTemperature(sample.getTime()), temperatures[i]);
+                        }
+
+                        // Only the main thread's share is recorded
+                        if (bucket >= 0) buckets.record(bucket, sampleNanos + System.nanoTime() - applyStarted);
+                    }
+                });
+            }
+        });
+    }
 
-            temperature = (int) Math.round(warmth - cold);
-            temperature += (int) Math.round(distance * itemWeight);
-            temperature += (int) Math.round(distance * armorWeight);
+    private TemperatureSample sample(Player player, PlayerSurvivalState state) {
+        Location location = player.getLocation();
 
-            temperature /= 10;
+        // Check item weight
+        // TODO: If time, add mapping so a pickaxe weighs more than diamonds
+        double itemWeight = 0;
 
-            // Incorporate world temperature
-            temperature += worldTemp / 2;
+        for (ItemStack item : player.getInventory().getContents()) {
+            if (item != null)
+                itemWeight += item.getAmount();
         }
+        itemWeight /= 500;
 
-        if (temperature == 0) temperature = 1; // So it doesn't go away
+        // Now check their armor weight
+        double armorWeight = 0;
+        armorWeight += getArmorWeight(player.getInventory().getHelmet());
+        armorWeight += getArmorWeight(player.getInventory().getChestplate());
+        armorWeight += getArmorWeight(player.getInventory().getLeggings());
+        armorWeight += getArmorWeight(player.getInventory().getBoots());
 
-        int currentTemperature = player.getScoreboard().getObjective(DisplaySlot.SIDEBAR).getScore(bodyTempKey).getScore();
+        return new TemperatureSample(player.getUniqueId(), player.getWorld().getUID(), location.getX(), location.getY(), location.getZ(),
+                player.getWorld().getTime(), player.isDead(), itemWeight, armorWeight, state.takeDistance(), state.getTemperature());
+    }
 
-        double diff = Math.abs(currentTemperature - temperature);
-        if (diff > 8)
-            temperature = (int) Math.round(temperature * 0.4); // Steady increase or decrease
+    private void adjustTemperature(Player player, PlayerSurvivalState state, int worldTemp, int temperature) {
+        state.setWorldTemperature(worldTemp);
+        state.setTemperature(temperature);
 
-        player.getScoreboard().getObjective(DisplaySlot.SIDEBAR).getScore(bodyTempKey).setScore(temperature);
+        // Only scores which changed need to go to the renderer, which decides what is worth sending
+        if (state.isDirty(PlayerSurvivalState.DIRTY_WORLD_TEMPERATURE)) sidebar.update(state.getSlot(), worldTempEntry, worldTemp);
+        if (state.isDirty(PlayerSurvivalState.DIRTY_TEMPERATURE)) sidebar.update(state.getSlot(), bodyTempEntry, temperature);
+        state.clean(PlayerSurvivalState.DIRTY_WORLD_TEMPERATURE | PlayerSurvivalState.DIRTY_TEMPERATURE);
 
         if (!player.isDead()) {
             if (temperature < hypothermiaTemp) player.damage(player.getMaxHealth() / 3);
             else if (temperature < shiverTemp) dropItems(player);
             else if (temperature > burningTemp) player.damage(player.getMaxHealth() / 3);
             else if (temperature > sweatingTemp) {
-                if (!player.hasMetadata("slow")) {
-                    player.setWalkSpeed(player.getWalkSpeed() / 2);
-                    player.setMetadata("slow", new FixedMetadataValue(Survive.getInstance(), "slow"));
-                }
+                if (!state.isSlow()) setWalkSpeedModifier(player, state, PlayerSurvivalState.SLOW_MODIFIER);
             }
 
-            if (temperature < sweatingTemp && player.hasMetadata("slow")) {
-                player.removeMetadata("slow", Survive.getInstance());
-                player.setWalkSpeed(player.getWalkSpeed() * 2);
-            }
+            if (temperature < sweatingTemp && state.isSlow()) setWalkSpeedModifier(player, state, 1);
         }
     }
 
+    private void setWalkSpeedModifier(Player player, PlayerSurvivalState state, float modifier) {
+        player.setWalkSpeed(player.getWalkSpeed() / state.getWalkSpeedModifier() * modifier);
+        state.setWalkSpeedModifier(modifier);
+    }
+
     private void dropItems(Player player) {
         Random random = new Random(); // Far enough apart that this won't matter
 
@@ -245,7 +281,11 @@ public class GameListener implements Listener {
         score.setScore(1);
 
         player.setScoreboard(scoreboard);
-        adjustTemperature(player);
+        sidebar.attach(states.create(player.getUniqueId()).getSlot(), player, 1);
+        if (calculator != null) {
+            buckets.add(player.getUniqueId());
+            adjustTemperatures(Collections.singletonList(player), -1);
+        }
 
         if (!player.hasPlayedBefore()) {
             player.teleport(player.getWorld().getSpawnLocation());
@@ -253,14 +293,13 @@ public class GameListener implements Listener {
     }
 
     @EventHandler
-    public void onPlayerMove(PlayerMoveEvent event) {
-        if (true) return; // disable movement count for now
-
+    public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
+        buckets.remove(player.getUniqueId());
 
-        double distance = Math.abs(event.getFrom().distance(event.getTo())); // TODO: THIS IS BAD
-        double curr = distances.containsKey(player.getUniqueId()) ? distances.get(player.getUniqueId()) : 0;
-
-        distances.put(player.getUniqueId(), curr + distance);
+        // Don't leave the player slowed down for their next visit
+        PlayerSurvivalState state = states.release(player.getUniqueId());
+        if (state != null) sidebar.detach(state.getSlot());
+        if (state != null && state.isSlow()) player.setWalkSpeed(player.getWalkSpeed() / state.getWalkSpeedModifier());
     }
 }
@@ -20,11 +20,15 @@ package com.turt2live.survive;
 import com.turt2live.survive.structure.FilledSphere;
 import com.turt2live.survive.structure.RawMaterialSphere;
 import com.turt2live.survive.structure.Structure;
+import com.turt2live.survive.util.AliasSampler;
 import org.bukkit.Material;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents a repository of many structures
@@ -33,7 +37,26 @@ import java.util.Random;
  */
 public final class StructureRepository {
 
+    /**
+     * Represents how a random structure is chosen
+     */
+    public static enum SelectionMode {
+        /**
+         * Uses a pre-built alias table per set of types. Gives the same odds as
+         * {@link #ROLL_ONCE} in constant time without allocating.
+         */
+        SAMPLED,
+
+        /**
+         * Rolls once and chooses evenly between every eligible structure, scanning
+         * all structures on every call. This is the original behaviour.
+         */
+        ROLL_ONCE
+    }
+
     private static List<Structure> STRUCTURES = new ArrayList<Structure>();
+    private static final ConcurrentMap<List<Class<?>>, StructureSampler> SAMPLERS = new ConcurrentHashMap<List<Class<?>>, StructureSampler>();
+    private static volatile SelectionMode mode = SelectionMode.SAMPLED;
 
     static {
         // Regular resource spheres
@@ -54,6 +77,70 @@ public final class StructureRepository {
         STRUCTURES.add(new FilledSphere(Material.DIAMOND_BLOCK, Material.STATIONARY_WATER, 6, 6, 0.10, true));
     }
 
+    /**
+     * Gets all structures in the repository
+     *
+     * @return an unmodifiable list of all structures
+     */
+    public static List<Structure> getStructures() {
+        return Collections.unmodifiableList(STRUCTURES);
+    }
+
+    /**
+     * Sets how random structures are chosen
+     *
+     * @param selectionMode the new mode, cannot be null
+     */
+    public static void setSelectionMode(SelectionMode selectionMode) {
+        if (selectionMode == null) throw new IllegalArgumentException();
+        mode = selectionMode;
+    }
+
+    /**
+     * Gets how random structures are chosen
+     *
+     * @return the selection mode
+     */
+    public static SelectionMode getSelectionMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the sampler for a set of types. Samplers are built once per set of types
+     * and cached, so callers which choose often should keep hold of the returned
+     * sampler rather than calling this each time.
+     *
+     * @param types the types to choose from. If null/empty, all are assumed.
+     *
+     * @return the sampler, never null
+     */
+    public static StructureSampler getSampler(List<Class<? extends Structure>> types) {
+        List<Class<?>> key = types == null ? Collections.<Class<?>>emptyList() : new ArrayList<Class<?>>(types);
+
+        StructureSampler sampler = SAMPLERS.get(key);
+        if (sampler == null) {
+            SAMPLERS.putIfAbsent(key, new StructureSampler(types));
+            sampler = SAMPLERS.get(key);
+        }
+        return sampler;
+    }
+
+    /**
+     * Gets a random structure from the repository using the cached sampler for the
+     * types, see {@link StructureSampler#sample(java.util.Random)}.
+     * <p/>This may return null if no structure was generated.
+     *
+     * @param random the random to use, cannot be null
+     * @param types  the types to generate from. If null/empty, all are assumed.
+     *
+     * @return the structure chosen, or null if none
+     */
+    public static Structure getRandomStructure(Random random, List<Class<? extends Structure>> types) {
+        if (random == null) throw new IllegalArgumentException();
+
+        return getSampler(types).sample(random);
+    }
+
     /**
      * Gets a random structure from the repository. This uses a simple method of
      * choosing a random value and creating a list of structures which fit the
@@ -65,10 +152,10 @@ public final class StructureRepository {
      *
      * @return the structure chosen, or null if none
      */
-    public static Structure getRandomStructure(Random random, Class<? extends Structure>... types) {
+    public static Structure getRandomStructureRollOnce(Random random, List<Class<? extends Structure>> types) {
         if (random == null) throw new IllegalArgumentException();
 
-        boolean all = types == null || types.length == 0;
+        boolean all = types == null || types.isEmpty();
 
         double choice = random.nextDouble();
         List<Structure> choices = new ArrayList<Structure>();
@@ -86,10 +173,54 @@ public final class StructureRepository {
         return null;
     }
 
-    private static boolean is(Structure structure, Class[] types) {
+    private static boolean is(Structure structure, List<Class<? extends Structure>> types) {
         for (Class<?> c : types) {
             if (c.isInstance(structure)) return true;
         }
         return false;
     }
+
+    /**
+     * Represents a pre-built chooser for one set of structure types. This gives the
+     * same odds as {@link SelectionMode#ROLL_ONCE}.
+     */
+    public static final class StructureSampler {
+
+        private final List<Class<? extends Structure>> types;
+        private final Structure[] outcomes;
+        private final AliasSampler sampler;
+
+        private StructureSampler(List<Class<? extends Structure>> types) {
+            this.types = types == null ? null : new ArrayList<Class<? extends Structure>>(types);
+
+            boolean all = types == null || types.isEmpty();
+
+            List<Structure> candidates = new ArrayList<Structure>();
+            for (Structure struct : STRUCTURES) {
+                if (all || is(struct, types)) candidates.add(struct);
+            }
+
+            double[] chances = new double[candidates.size()];
+            for (int i = 0; i < chances.length; i++) {
+                chances[i] = candidates.get(i).getPercentChance();
+            }
+
+            // The last outcome is "no structure"
+            outcomes = candidates.toArray(new Structure[candidates.size() + 1]);
+            sampler = AliasSampler.fromRollOnce(chances);
+        }
+
+        /**
+         * Chooses a random structure. In {@link SelectionMode#ROLL_ONCE} mode this defers to
+         * {@link #getRandomStructureRollOnce(java.util.Random, java.util.List)}.
+         *
+         * @param random the random to use, cannot be null
+         *
+         * @return the structure chosen, or null if none
+         */
+        public Structure sample(Random random) {
+            if (mode == SelectionMode.ROLL_ONCE) return getRandomStructureRollOnce(random, types);
+            return outcomes[sampler.sample(random)];
+        }
+    }
 }
@@ -1,18 +1,27 @@
 package com.turt2live.survive;
 
-import com.turt2live.survive.structure.schematic.EmbeddedSchematic;
-import com.turt2live.survive.structure.schematic.Schematic;
+import com.turt2live.survive.structure.schematic.SchematicCache;
+import com.turt2live.survive.structure.schematic.SchematicLoader;
 import com.turt2live.survive.structure.schematic.SchematicRepository;
+import com.turt2live.survive.world.DeferredWriteListener;
+import com.turt2live.survive.world.EntitySpawnQueue;
+import com.turt2live.survive.world.PlacementScheduler;
+import com.turt2live.survive.world.RegionFiles;
 import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldInitEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.generator.ChunkGenerator;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.ShapelessRecipe;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.Reader;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main plugin class. Does nothing but delegate.
@@ -23,28 +32,47 @@ public class Survive extends JavaPlugin implements Listener {
 
     private static Survive instance;
 
+    private ExecutorService pregenerator;
+
     @Override
     public void onEnable() {
         instance = this;
 
+        saveDefaultConfig();
+
+        String selection = getConfig().getString("structures.selection", "SAMPLED");
+        try {
+            StructureRepository.setSelectionMode(StructureRepository.SelectionMode.valueOf(selection.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Unknown structure selection mode '" + selection + "', using SAMPLED");
+        }
+
+        getServer().getPluginManager().registerEvents(this, this);
         getServer().getPluginManager().registerEvents(new GameListener(this), this);
+        getServer().getPluginManager().registerEvents(new DeferredWriteListener(), this);
+
+        int changesPerTick = getConfig().getInt("placement.changes-per-tick", 4096);
+        double millisPerTick = getConfig().getDouble("placement.max-millis-per-tick", 5);
+        boolean logPlacement = getConfig().getBoolean("placement.log-timings", false);
+        if (changesPerTick > 0 && millisPerTick > 0)
+            PlacementScheduler.start(this, changesPerTick, (long) (millisPerTick * 1000000L), logPlacement);
+
+        int spawnsPerTick = getConfig().getInt("spawning.spawns-per-tick", 2);
+        int regionCap = getConfig().getInt("spawning.region-cap", 48);
+        boolean logSpawning = getConfig().getBoolean("spawning.log-timings", false);
+        if (spawnsPerTick > 0 && regionCap > 0) EntitySpawnQueue.start(this, spawnsPerTick, regionCap, logSpawning);
 
         getServer().addRecipe(new ShapelessRecipe(new ItemStack(Material.FLINT_AND_STEEL)).addIngredient(4, Material.WOOD).addIngredient(1, Material.IRON_INGOT));
         getServer().addRecipe(new ShapelessRecipe(new ItemStack(Material.FLINT_AND_STEEL)).addIngredient(1, Material.COBBLESTONE).addIngredient(1, Material.IRON_INGOT));
 
-        // Register schematics
+        // Register schematics, in the background so startup isn't held up
         try {
-            Reader reader = getTextResource("schematics/schematics.txt");
-            BufferedReader buffered = new BufferedReader(reader);
-            String line;
-            while ((line = buffered.readLine()) != null) {
-                String file = "schematics/" + line.split(" ")[0];
-                double chance = Double.parseDouble(line.split(" ")[1]);
-
-                InputStream stream = getResource(file);
-                Schematic schematic = new EmbeddedSchematic(stream);
-                SchematicRepository.register(schematic, chance);
-            }
+            int threads = Math.max(getConfig().getInt("schematics.loader-threads", 0), 0);
+            boolean logTimings = getConfig().getBoolean("schematics.log-timings", false);
+            SchematicRepository.setMemoryBudget(Math.max(getConfig().getLong("schematics.memory-budget-kb", 0), 0) * 1024L);
+            SchematicCache cache = getConfig().getBoolean("schematics.cache", true) ? new SchematicCache(new File(getDataFolder(), "cache")) : null;
+
+            new SchematicLoader(this, threads, logTimings, cache).loadAll("schematics/schematics.txt");
         } catch (Exception e) {
             getLogger().warning("Error reading schematic listing");
             e.printStackTrace();
@@ -53,14 +81,64 @@ public class Survive extends JavaPlugin implements Listener {
 
     @Override
     public void onDisable() {
+        EntitySpawnQueue.stop(); // First, so animals queued by the jobs below spawn right away
+        PlacementScheduler.stop(); // Applies whatever is still waiting
         getServer().getScheduler().cancelTasks(this);
 
+        if (pregenerator != null) {
+            pregenerator.shutdownNow();
+            pregenerator = null;
+        }
+
+        if (getConfig().getBoolean("schematics.log-timings", false)) {
+            getLogger().info("Schematics used " + (SchematicRepository.getMemoryUsage() / 1024) + "KB ("
+                    + (SchematicRepository.getPlanMemoryUsage() / 1024) + "KB for paste plans, "
+                    + (SchematicRepository.getVariantMemoryUsage() / 1024) + "KB of that for rotated variants), "
+                    + SchematicRepository.getEvictionCount() + " evictions");
+        }
+
         instance = null;
     }
 
     @Override
     public ChunkGenerator getDefaultWorldGenerator(String worldName, String id) {
-        return new WorldGenerator();
+        boolean seeded = getConfig().getBoolean("generator.seeded-chunks", false);
+        int islandSpacing = getConfig().getInt("generator.islands.spacing", 0);
+
+        return new WorldGenerator(seeded, Math.max(islandSpacing, 0));
+    }
+
+    @EventHandler
+    public void onWorldInit(WorldInitEvent event) {
+        World world = event.getWorld();
+        int radius = getConfig().getInt("generator.pregenerate.radius", 0);
+
+        if (radius <= 0 || !(world.getGenerator() instanceof WorldGenerator)) return;
+        WorldGenerator generator = (WorldGenerator) world.getGenerator();
+        if (!generator.isSeededChunks()) return;
+
+        if (pregenerator == null) {
+            int threads = getConfig().getInt("generator.pregenerate.threads", 0);
+            if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+            pregenerator = Executors.newFixedThreadPool(threads);
+        }
+
+        int chunks = (radius * 2 + 1) * (radius * 2 + 1);
+        getLogger().info("Pre-generating " + chunks + " chunks for " + world.getName());
+        RegionFiles regions = new RegionFiles(new File(world.getWorldFolder(), "region"));
+        generator.pregenerate(world.getSeed(), world.getMaxHeight(), -radius, -radius, radius, radius, regions, pregenerator);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        // Pre-generated chunks the server never asked for would otherwise be held forever
+        if (!(event.getWorld().getGenerator() instanceof WorldGenerator)) return;
+        WorldGenerator generator = (WorldGenerator) event.getWorld().getGenerator();
+
+        int unused = generator.getPregeneratedCount();
+        if (unused > 0)
+            getLogger().info("Discarding " + unused + " pre-generated chunks for " + event.getWorld().getName() + " which were never used");
+        generator.discardPregenerated();
     }
 
     /**
@@ -1,30 +1,58 @@
 package com.turt2live.survive;
 
 import com.google.common.collect.ImmutableList;
-import com.turt2live.survive.populator.SpawnPopulator;
 import com.turt2live.survive.populator.SphereIncludePopulator;
+import com.turt2live.survive.structure.IslandTemplate;
+import com.turt2live.survive.structure.SphereLayout;
+import com.turt2live.survive.structure.SpherePlacement;
+import com.turt2live.survive.util.ChunkBuffer;
+import com.turt2live.survive.util.ChunkRandom;
+import com.turt2live.survive.world.RegionFiles;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.generator.BlockPopulator;
 import org.bukkit.generator.ChunkGenerator;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * The world generator used to create a skyblock-ish world with more
  * challenges and benefits. Challenges include the spacing between
  * blocks is not even as well as the types of blocks spawned. Benefits
  * include large spheres of materials with diamonds included in the
- * center.
+ * center. Spheres are written straight into the chunk sections of every
+ * chunk they overlap, see {@link com.turt2live.survive.structure.SphereLayout}.
+ * <p/>
+ * When seeded chunks are enabled the base terrain of a chunk is derived
+ * only from the world seed and the chunk coordinates, which makes
+ * {@link #generateSections(long, int, int, int)} safe to call from any
+ * number of threads at once.
  *
  * @author turt2live
  */
 public class WorldGenerator extends ChunkGenerator {
 
-    private int spawnY = 128;
-    private int[] randomIds = new int[] {
+    private final int spawnY = 128;
+    private final boolean seededChunks;
+    private final int islandSpacing;
+    private volatile IslandTemplate island;
+    private final SphereLayout sphereLayout = new SphereLayout();
+    private final SphereLayout.SourceFilter sphereSources = new SphereLayout.SourceFilter() {
+        @Override
+        public boolean canPlace(int chunkX, int chunkZ) {
+            return !isIslandChunk(chunkX, chunkZ);
+        }
+    };
+    private final int[] randomIds = new int[] {
             Material.DIRT.getId(),
             Material.STONE.getId(),
             Material.WOOD.getId(),
@@ -49,62 +77,270 @@ public class WorldGenerator extends ChunkGenerator {
             Material.BOOKSHELF.getId()
     };
 
+    // Stream salt for the base terrain, see ChunkRandom
+    private static final long TERRAIN_SALT = 0x5445525241494EL;
+
+    // Per-thread scratch so worker threads never share a random or buffer
+    private final ThreadLocal<ChunkRandom> scratchRandom = new ThreadLocal<ChunkRandom>() {
+        @Override
+        protected ChunkRandom initialValue() {
+            return new ChunkRandom(0);
+        }
+    };
+    private final ThreadLocal<ChunkBuffer> scratchBuffer = new ThreadLocal<ChunkBuffer>() {
+        @Override
+        protected ChunkBuffer initialValue() {
+            return new ChunkBuffer(256);
+        }
+    };
+
+    // Sections generated ahead of time, consumed once by the server
+    private final ConcurrentMap<Long, byte[][]> pregenerated = new ConcurrentHashMap<Long, byte[][]>();
+
+    // Chunks the server generated itself while pre-generation was running, so workers don't store them
+    private final Set<Long> served = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private int pregenerating = 0; // Tasks still running, guarded by served
+
+    /**
+     * Creates a new world generator which uses the server supplied random
+     * for each chunk.
+     */
+    public WorldGenerator() {
+        this(false, 0);
+    }
+
+    /**
+     * Creates a new world generator
+     *
+     * @param seededChunks  if true, each chunk is generated from (world seed, chunk x, chunk z) only
+     * @param islandSpacing the distance in chunks between islands on the island grid. If 0, only
+     *                      the spawn island is generated. Cannot be negative.
+     */
+    public WorldGenerator(boolean seededChunks, int islandSpacing) {
+        if (islandSpacing < 0) throw new IllegalArgumentException();
+
+        this.seededChunks = seededChunks;
+        this.islandSpacing = islandSpacing;
+    }
+
+    /**
+     * Determines if a chunk holds an island. The spawn chunk (0, 0) always does, other
+     * chunks only do when they are on the island grid.
+     *
+     * @param x the chunk X coordinate
+     * @param z the chunk Z coordinate
+     *
+     * @return true if the chunk holds an island, false otherwise
+     */
+    public boolean isIslandChunk(int x, int z) {
+        if (x == 0 && z == 0) return true;
+        return islandSpacing > 0 && x % islandSpacing == 0 && z % islandSpacing == 0;
+    }
+
+    /**
+     * Gets the sphere placed from a chunk, if any. Island chunks never place spheres.
+     *
+     * @param seed      the world seed
+     * @param maxHeight the world's maximum height
+     * @param x         the chunk X coordinate
+     * @param z         the chunk Z coordinate
+     * @param random    the random to use, see {@link com.turt2live.survive.structure.SphereLayout#getPlacement(long, int, int, int, com.turt2live.survive.util.ChunkRandom)}
+     *
+     * @return the placement, or null if none
+     */
+    public SpherePlacement getSpherePlacement(long seed, int maxHeight, int x, int z, ChunkRandom random) {
+        if (isIslandChunk(x, z)) return null;
+        return sphereLayout.getPlacement(seed, maxHeight, x, z, random);
+    }
+
+    /**
+     * Determines if this generator derives each chunk from the world seed
+     * and chunk coordinates only.
+     *
+     * @return true if chunks are seeded per chunk, false otherwise
+     */
+    public boolean isSeededChunks() {
+        return seededChunks;
+    }
+
     @Override
     public byte[][] generateBlockSections(World world, Random random, int x, int z, BiomeGrid biomes) {
+        if (!seededChunks) return generateSections(random, false, world.getSeed(), world.getMaxHeight(), x, z);
+
+        long key = chunkKey(x, z);
+        if (isPregenerating()) served.add(key);
+        byte[][] blocks = pregenerated.remove(key);
+        if (blocks != null && blocks.length == world.getMaxHeight() / 16) return blocks;
+
+        return generateSections(world.getSeed(), world.getMaxHeight(), x, z);
+    }
+
+    /**
+     * Generates the block sections for a chunk using only the world seed and
+     * chunk coordinates. This is safe to call from multiple threads at once
+     * and will always return the same sections for the same arguments.
+     *
+     * @param seed      the world seed
+     * @param maxHeight the world's maximum height, must be a positive multiple of 16
+     * @param x         the chunk X coordinate
+     * @param z         the chunk Z coordinate
+     *
+     * @return the generated block sections
+     */
+    public byte[][] generateSections(long seed, int maxHeight, int x, int z) {
+        if (maxHeight <= 0 || (maxHeight & 0xF) != 0) throw new IllegalArgumentException();
+
+        ChunkRandom random = scratchRandom.get().reset(seed, x, z, TERRAIN_SALT);
+
+        return generateSections(random, true, seed, maxHeight, x, z);
+    }
+
+    /**
+     * Generates the block sections for a range of chunks on the supplied executor. The
+     * results are held until the server asks for that chunk, at which point they are
+     * handed over instead of being generated again, or until {@link #discardPregenerated()}.
+     * Chunks which are already saved in the world's region files, or which the server
+     * generates itself before a worker reaches them, are skipped, as the server will
+     * never ask for them. This does nothing if seeded chunks are not enabled.
+     *
+     * @param seed      the world seed
+     * @param maxHeight the world's maximum height, must be a positive multiple of 16
+     * @param minX      the minimum chunk X coordinate, inclusive
+     * @param minZ      the minimum chunk Z coordinate, inclusive
+     * @param maxX      the maximum chunk X coordinate, inclusive
+     * @param maxZ      the maximum chunk Z coordinate, inclusive
+     * @param regions   the world's region files, or null if the world has none yet
+     * @param executor  the executor to generate on, cannot be null
+     *
+     * @return the submitted tasks, one per chunk row
+     */
+    public List<Future<?>> pregenerate(final long seed, final int maxHeight, final int minX, final int minZ, final int maxX, final int maxZ,
+                                       final RegionFiles regions, ExecutorService executor) {
+        if (executor == null || maxX < minX || maxZ < minZ) throw new IllegalArgumentException();
+
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        if (!seededChunks) return tasks;
+
+        synchronized (served) {
+            pregenerating += maxX - minX + 1;
+        }
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            final int x = cx;
+            tasks.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int z = minZ; z <= maxZ; z++) {
+                            if (regions != null && regions.hasChunk(x, z)) continue;
+
+                            long key = chunkKey(x, z);
+                            if (served.contains(key)) continue;
+
+                            pregenerated.putIfAbsent(key, generateSections(seed, maxHeight, x, z));
+                            if (served.contains(key)) pregenerated.remove(key); // The server got there first
+                        }
+                    } finally {
+                        synchronized (served) {
+                            if (--pregenerating == 0) served.clear();
+                        }
+                    }
+                }
+            }));
+        }
+
+        return tasks;
+    }
+
+    private boolean isPregenerating() {
+        synchronized (served) {
+            return pregenerating > 0;
+        }
+    }
+
+    /**
+     * Discards every pre-generated chunk the server has not asked for yet, such as when
+     * the world unloads
+     */
+    public void discardPregenerated() {
+        pregenerated.clear();
+    }
+
+    /**
+     * Gets the number of pre-generated chunks the server has not asked for yet
+     *
+     * @return the number of held chunks
+     */
+    public int getPregeneratedCount() {
+        return pregenerated.size();
+    }
+
+    // Unseeded chunks draw from the server's random exactly as before seeded chunks existed,
+    // so worlds made without them keep generating the same scattered blocks
+    private byte[][] generateSections(Random random, boolean seeded, long seed, int maxHeight, int x, int z) {
         // generates a chunk
-        byte[][] blocks = new byte[world.getMaxHeight() / 16][];
-        boolean spawnChunk = x == 0 && z == 0;
-
-        if (spawnChunk) {
-            // TODO: SPAWN IS OFF CENTER
-
-            // We'll generate an island for them
-            setRange(8, spawnY - 4, 8, 11, spawnY - 3, 11, Material.STONE.getId(), blocks);
-            setBlock(9, spawnY - 4, 9, Material.BEDROCK.getId(), blocks); // So they don't fall..
-
-            /*
-             7  8  9  10 11
-            [x][ ][ ][ ][x] 7
-            [ ]         [ ] 8
-            [ ]         [ ] 9
-            [ ]         [ ] 10
-            [x][ ][ ][ ][x] 11
-             */
-
-            // Pillars
-            setRange(7, spawnY - 4, 7, 8, spawnY, 8, Material.LOG.getId(), blocks);
-            setRange(7, spawnY - 4, 11, 8, spawnY, 12, Material.LOG.getId(), blocks);
-            setRange(11, spawnY - 4, 7, 12, spawnY, 8, Material.LOG.getId(), blocks);
-            setRange(11, spawnY - 4, 11, 12, spawnY, 12, Material.LOG.getId(), blocks);
-
-            // Set walls
-            setRange(8, spawnY - 4, 7, 11, spawnY - 1, 8, Material.DIRT.getId(), blocks);
-            setRange(7, spawnY - 4, 8, 8, spawnY - 1, 11, Material.DIRT.getId(), blocks);
-            setRange(11, spawnY - 4, 8, 12, spawnY - 1, 11, Material.DIRT.getId(), blocks);
-            setRange(8, spawnY - 4, 11, 11, spawnY - 1, 12, Material.DIRT.getId(), blocks);
+        ChunkBuffer blocks = scratchBuffer.get().reset(maxHeight);
+
+        if (isIslandChunk(x, z)) {
+            getIsland(maxHeight).stamp(blocks);
         } else {
             // Random scattered block generation (in packs of 4)
-            int minPacks = world.getMaxHeight() / 24;
+            int minPacks = maxHeight / 24;
             int packs = random.nextInt(minPacks * 3) + minPacks;
 
-            for (int pack = 0; pack < packs; pack++) {
-                int rx = random.nextInt(15); // Keep it within the chunk...
-                int ry = random.nextInt(world.getMaxHeight() - 4) + 1;
-                int rz = random.nextInt(15); // Keep it within the chunk...
-
-                // Set the blocks
-                setBlock(rx, ry, rz, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx, ry, rz + 1, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx, ry + 1, rz, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx, ry + 1, rz + 1, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx + 1, ry, rz, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx + 1, ry, rz + 1, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx + 1, ry + 1, rz, randomIds[random.nextInt(randomIds.length)], blocks);
-                setBlock(rx + 1, ry + 1, rz + 1, randomIds[random.nextInt(randomIds.length)], blocks);
+            if (!seeded) {
+                for (int pack = 0; pack < packs; pack++) {
+                    int rx = random.nextInt(15); // Keep it within the chunk...
+                    int ry = random.nextInt(maxHeight - 4) + 1;
+                    int rz = random.nextInt(15); // Keep it within the chunk...
+
+                    // Set the blocks
+                    blocks.setBlock(rx, ry, rz, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx, ry, rz + 1, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx, ry + 1, rz, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx, ry + 1, rz + 1, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx + 1, ry, rz, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx + 1, ry, rz + 1, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx + 1, ry + 1, rz, randomIds[random.nextInt(randomIds.length)]);
+                    blocks.setBlock(rx + 1, ry + 1, rz + 1, randomIds[random.nextInt(randomIds.length)]);
+                }
+            } else {
+                for (int pack = 0; pack < packs; pack++) {
+                    // One draw for the position and two for the eight block ids
+                    long position = random.nextLong();
+                    int rx = ChunkRandom.slice(position, 21, 15); // Keep it within the chunk...
+                    int ry = ChunkRandom.slice(position >>> 21, 21, maxHeight - 4) + 1;
+                    int rz = ChunkRandom.slice(position >>> 42, 21, 15); // Keep it within the chunk...
+
+                    long ids = random.nextLong();
+                    long moreIds = random.nextLong();
+
+                    // Set the blocks
+                    blocks.setBlock(rx, ry, rz, randomId(ids, 0));
+                    blocks.setBlock(rx, ry, rz + 1, randomId(ids, 1));
+                    blocks.setBlock(rx, ry + 1, rz, randomId(ids, 2));
+                    blocks.setBlock(rx, ry + 1, rz + 1, randomId(ids, 3));
+                    blocks.setBlock(rx + 1, ry, rz, randomId(moreIds, 0));
+                    blocks.setBlock(rx + 1, ry, rz + 1, randomId(moreIds, 1));
+                    blocks.setBlock(rx + 1, ry + 1, rz, randomId(moreIds, 2));
+                    blocks.setBlock(rx + 1, ry + 1, rz + 1, randomId(moreIds, 3));
+                }
             }
         }
 
-        return blocks;
+        // Spheres from this chunk and any neighbours which reach into it
+        sphereLayout.rasterize(blocks, seed, x, z, sphereSources);
+
+        return blocks.getSections();
+    }
+
+    private IslandTemplate getIsland(int maxHeight) {
+        IslandTemplate template = island;
+        if (template == null) {
+            template = IslandTemplate.createSpawnIsland(spawnY, maxHeight);
+            island = template; // Identical if built twice, so a race is harmless
+        }
+        return template;
     }
 
     @Override
@@ -112,39 +348,19 @@ public class WorldGenerator extends ChunkGenerator {
         return new Location(world, 8.5, spawnY, 8.5);
     }
 
-    private void setRange(int sx, int sy, int sz, int dx, int dy, int dz, int id, byte[][] chunk) {
-        for (int x = sx; x < dx; x++) {
-            for (int y = sy; y < dy; y++) {
-                for (int z = sz; z < dz; z++) {
-                    setBlock(x, y, z, id, chunk);
-                }
-            }
-        }
-    }
-
-    // This is a slightly modified version of the method found in the javadocs for ChunkGenerator.
-    // jkcclemens permitted use
-    private void setBlock(int x, int y, int z, int id, byte[][] chunk) {
-        if (chunk[y >> 4] == null) {
-            chunk[y >> 4] = new byte[4096];
-        }
-        chunk[y >> 4][((y & 0xF) << 8) | (z << 4) | x] = (byte) id;
+    // Picks one of four 16 bit slices out of a random long
+    private int randomId(long bits, int slot) {
+        return randomIds[ChunkRandom.slice(bits >>> (slot << 4), 16, randomIds.length)];
     }
 
-    // This is a slightly modified version of the method found in the javadocs for ChunkGenerator.
-    // jkcclemens permitted use
-    private byte getBlock(int x, int y, int z, byte[][] chunk) {
-        if (chunk[y >> 4] == null) {
-            return (byte) 0;
-        }
-        return chunk[y >> 4][((y & 0xF) << 8) | (z << 4) | x];
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
     }
 
     @Override
     public List<BlockPopulator> getDefaultPopulators(World world) {
         return ImmutableList.<BlockPopulator>of(
-                new SpawnPopulator(spawnY),
-                new SphereIncludePopulator()//,
+                new SphereIncludePopulator(this)//,
                 // new SchematicPopulator()
         );
     }
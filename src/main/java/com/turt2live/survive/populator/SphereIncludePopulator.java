@@ -17,58 +17,65 @@
 
 package com.turt2live.survive.populator;
 
-import com.turt2live.survive.StructureRepository;
+import com.turt2live.survive.WorldGenerator;
 import com.turt2live.survive.populator.sphere.SphereAnimalPopulator;
 import com.turt2live.survive.populator.sphere.SphereSandPopulator;
-import com.turt2live.survive.structure.Sphere;
-import com.turt2live.survive.structure.Structure;
-import com.turt2live.survive.util.Point3D;
+import com.turt2live.survive.structure.SpherePlacement;
+import com.turt2live.survive.util.ChunkRandom;
+import com.turt2live.survive.world.PlacementJob;
+import com.turt2live.survive.world.PlacementScheduler;
+import com.turt2live.survive.world.SnapshotBlockReader;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.generator.BlockPopulator;
-import org.bukkit.util.Vector;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
 /**
- * Represents the populator for generating spheres. This also contains
- * references to other sphere populators to make the spheres pretty.
+ * Represents the populator for decorating spheres. The spheres themselves
+ * are written by the {@link com.turt2live.survive.WorldGenerator}, this only
+ * runs the other sphere populators to make the spheres pretty.
  *
  * @author turt2live
  */
 public class SphereIncludePopulator extends BlockPopulator {
 
     private List<SpherePopulator> populatorList = new ArrayList<SpherePopulator>();
+    private WorldGenerator generator;
 
-    public SphereIncludePopulator() {
+    /**
+     * Creates a new sphere populator
+     *
+     * @param generator the generator of the world, used to find sphere placements. Cannot be null.
+     */
+    public SphereIncludePopulator(WorldGenerator generator) {
+        if (generator == null) throw new IllegalArgumentException();
+
+        this.generator = generator;
         populatorList.add(new SphereSandPopulator(0.10)); // 10% of all spheres
         populatorList.add(new SphereAnimalPopulator(0.50)); // 50% of grass spheres
     }
 
     @Override
-    public void populate(World world, Random random, Chunk chunk) {
-        if (chunk.getX() == 0 && chunk.getZ() == 0) return; // Spawn chunk, skip
-
-        // Sphere generation
-        Structure structure = StructureRepository.getRandomStructure(random, Sphere.class);
+    public void populate(World world, Random serverRandom, Chunk chunk) {
+        // The sphere itself was already written by the generator, we only decorate it here.
+        // Each chunk gets its own stream so the result does not depend on population order.
+        ChunkRandom random = new ChunkRandom(0);
+        SpherePlacement placement = generator.getSpherePlacement(world.getSeed(), world.getMaxHeight(), chunk.getX(), chunk.getZ(), random);
 
-        if (structure != null) {
-            // We need to choose a suitable Y location
-            int minY = 32;
-            int cy = random.nextInt(world.getMaxHeight() - minY - minY) + minY; // Keep within world bounds
-            int cx = random.nextInt(16);
-            int cz = random.nextInt(16);
-            Location center = new Location(world, chunk.getX() * 16 + cx, cy, chunk.getZ() * 16 + cz);
-
-            Vector dimensions = structure.generate(world, chunk, random, new Point3D(center.getBlockX(), center.getBlockY(), center.getBlockZ()));
-            int radius = dimensions.getBlockX() / 2;
+        if (placement != null) {
+            Location center = new Location(world, placement.getX(), placement.getY(), placement.getZ());
+            SnapshotBlockReader blocks = new SnapshotBlockReader(world);
+            PlacementJob job = new PlacementJob(world, chunk.getX(), chunk.getZ());
 
             for (SpherePopulator populator : populatorList) {
-                populator.populate(world, random, chunk, center, radius);
+                populator.populate(world, random, chunk, center.clone(), placement.getRadius(), blocks, job);
             }
+
+            PlacementScheduler.schedule(job);
         }
     }
 }
@@ -18,6 +18,10 @@
 package com.turt2live.survive.populator;
 
 import com.turt2live.survive.Survive;
+import com.turt2live.survive.world.DeferredBlockWrites;
+import com.turt2live.survive.world.PlacementJob;
+import com.turt2live.survive.world.SnapshotBlockReader;
+import com.turt2live.survive.world.VoxelEditSession;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -52,16 +56,26 @@ public abstract class SpherePopulator {
      * @param chunk  the applicable chunk
      * @param center the sphere's center
      * @param radius the radius of the sphere, must be >= 1
+     * @param blocks the reader to read blocks with, shared by the populators of a chunk. Cannot be null.
+     * @param job    the job to add block changes to, shared by the populators of a chunk. Cannot be null.
      */
-    public final void populate(World world, Random random, Chunk chunk, Location center, int radius) {
+    public final void populate(World world, Random random, Chunk chunk, Location center, int radius, SnapshotBlockReader blocks, PlacementJob job) {
         if (radius < 1) throw new IllegalArgumentException("Radius too small");
+        if (blocks == null || job == null) throw new IllegalArgumentException();
 
         if (center != null && random.nextDouble() < chance) {
-            Block bcenter = center.getBlock();
+            final Block bcenter = center.getBlock();
 
             if (!bcenter.hasMetadata(SPHERE_POPULATED_META)) {
-                if (populate(world, chunk, random, center, radius))
-                    bcenter.setMetadata(SPHERE_POPULATED_META, new FixedMetadataValue(Survive.getInstance(), true));
+                if (populate(world, chunk, random, center, radius, blocks, job)) {
+                    // Only marked once the changes are actually in the world
+                    job.onComplete(new Runnable() {
+                        @Override
+                        public void run() {
+                            bcenter.setMetadata(SPHERE_POPULATED_META, new FixedMetadataValue(Survive.getInstance(), true));
+                        }
+                    });
+                }
             }
         }
     }
@@ -74,37 +88,42 @@ public abstract class SpherePopulator {
      * @param random the applicable random
      * @param center the sphere's center
      * @param radius the sphere's radius
+     * @param blocks the reader to read blocks with
+     * @param job    the job to add block changes and follow-up work to, such as by {@link com.turt2live.survive.world.VoxelEditSession#commit(com.turt2live.survive.world.PlacementJob)}
      *
      * @return true if the sphere was populated, false otherwise
      */
-    protected abstract boolean populate(World world, Chunk chunk, Random random, Location center, int radius);
+    protected abstract boolean populate(World world, Chunk chunk, Random random, Location center, int radius, SnapshotBlockReader blocks, PlacementJob job);
 
     /**
      * Caps a sphere with a material, squaring the top off. This will always add at least
      * 1 layer on top of the sphere of the defined material. The 'extraLayers' can be used
      * to further increase that.
      *
+     * @param session      the edit session to cap the sphere in, cannot be null
      * @param capMaterial  the material to cap the sphere with, cannot be null
      * @param extraLayers  the number of extra layers to add to the sphere. Must be >= 0
      * @param sphereCenter the center of the sphere, cannot be null
      * @param radius       the radius of the sphere, must be >= 1
      */
-    protected void capSphere(Material capMaterial, int extraLayers, Location sphereCenter, int radius) {
-        if (capMaterial == null || extraLayers < 0 || sphereCenter == null || radius < 1)
+    protected void capSphere(VoxelEditSession session, Material capMaterial, int extraLayers, Location sphereCenter, int radius) {
+        if (session == null || capMaterial == null || extraLayers < 0 || sphereCenter == null || radius < 1)
             throw new IllegalArgumentException();
 
+        int cx = sphereCenter.getBlockX(), cy = sphereCenter.getBlockY(), cz = sphereCenter.getBlockZ();
+
         // First we need to map how the sphere looks. This is so we can just add slices to it as needed.
         int[][] map = new int[16][16];
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
-                Block b = sphereCenter.clone().add(x - 8, 0, z - 8).getBlock();
-                if (b.getType() != Material.AIR) {
+                if (session.getTypeId(cx + x - 8, cy, cz + z - 8) > 0) { // Leave unloaded chunks alone
                     map[x][z] = 1;
                 }
             }
         }
 
         // Start capping!
+        int capId = capMaterial.getId();
         boolean onTop = false;
         int layersLeft = extraLayers;
         int y = 1; // We already used y=0 to determine the mapping
@@ -115,8 +134,8 @@ public abstract class SpherePopulator {
             for (int z = 0; z < 16; z++) {
                 for (int x = 0; x < 16; x++) {
                     if (map[x][z] == 1) {
-                        Block b = sphereCenter.clone().add(x - 8, y, z - 8).getBlock();
-                        if (b.getType() == Material.AIR) b.setType(capMaterial);
+                        int bx = cx + x - 8, by = cy + y, bz = cz + z - 8;
+                        if (session.getTypeId(bx, by, bz) == 0) session.setTypeId(bx, by, bz, capId);
                         else wasAllCapped = false;
                     }
                 }
@@ -128,6 +147,42 @@ public abstract class SpherePopulator {
         }
     }
 
+    /**
+     * Opens an edit session over the top half of a sphere: from its center up to
+     * its top plus some extra height, and wide enough for {@link #capSphere(com.turt2live.survive.world.VoxelEditSession, org.bukkit.Material, int, org.bukkit.Location, int)}.
+     * The caller commits the session, normally to the populator's {@link com.turt2live.survive.world.PlacementJob}.
+     *
+     * @param blocks      the reader to copy blocks from, cannot be null
+     * @param center      the center of the sphere, cannot be null
+     * @param radius      the radius of the sphere, must be >= 1
+     * @param extraHeight the number of blocks above the sphere to include, must be >= 0
+     *
+     * @return the edit session
+     */
+    protected VoxelEditSession openSession(SnapshotBlockReader blocks, Location center, int radius, int extraHeight) {
+        if (blocks == null || center == null || radius < 1 || extraHeight < 0) throw new IllegalArgumentException();
+
+        int half = Math.max(8, radius + 1);
+        int cx = center.getBlockX(), cy = center.getBlockY(), cz = center.getBlockZ();
+        return new VoxelEditSession(blocks, cx - half, cy, cz - half, cx + half, cy + radius + extraHeight, cz + half);
+    }
+
+    /**
+     * Sets a block without loading its chunk. If the chunk is not loaded the write
+     * is applied once it loads. The write is recorded in the reader so later reads
+     * see it.
+     *
+     * @param blocks   the reader of the world, cannot be null
+     * @param x        the X coordinate
+     * @param y        the Y coordinate
+     * @param z        the Z coordinate
+     * @param material the material to set, cannot be null
+     */
+    protected void setBlock(SnapshotBlockReader blocks, int x, int y, int z, Material material) {
+        DeferredBlockWrites.get(blocks.getWorld()).setBlock(x, y, z, material.getId(), (byte) 0);
+        blocks.set(x, y, z, material.getId());
+    }
+
     protected boolean allNot(Material material, Block... blocks) {
         for (Block block : blocks) {
             if (block.getType() == material) return false;
@@ -18,13 +18,17 @@
 package com.turt2live.survive.populator.sphere;
 
 import com.turt2live.survive.populator.SpherePopulator;
+import com.turt2live.survive.world.EntitySpawnQueue;
+import com.turt2live.survive.world.PlacementJob;
+import com.turt2live.survive.world.SnapshotBlockReader;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
 import org.bukkit.entity.EntityType;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -61,19 +65,48 @@ public class SphereAnimalPopulator extends SpherePopulator {
     }
 
     @Override
-    protected boolean populate(World world, Chunk chunk, Random random, Location center, int radius) {
-        Location top = center.add(0, radius - 1, 0);
-        Block bTop = top.getBlock();
+    protected boolean populate(World world, Chunk chunk, Random random, Location center, int radius, SnapshotBlockReader blocks, PlacementJob job) {
+        // Find the surface from above, so a sphere capped by another populator is not spawned into
+        int x = center.getBlockX(), z = center.getBlockZ();
+        int scanY = center.getBlockY() + 2 * radius + 1;
+        int topY = blocks.getHighestNonAirBelow(x, scanY, z);
 
-        if (bTop.getType() == Material.GRASS && random.nextDouble() < chance) {
+        if (topY >= 0 && blocks.getTypeId(x, topY, z) == Material.GRASS.getId() && random.nextDouble() < chance) {
             int minMobs = 6;
             int mobs = random.nextInt(minMobs) + minMobs;
 
-            Location l = top.add(0, 1, 0);
+            // Spread the mobs over grass on top of the sphere instead of stacking them on one block
+            final List<Location> spawns = new ArrayList<Location>();
+            int reach = Math.max(radius - 1, 0);
+            for (int attempt = 0; attempt < mobs * 4 && spawns.size() < mobs; attempt++) {
+                int dx = reach == 0 ? 0 : random.nextInt(reach * 2 + 1) - reach;
+                int dz = reach == 0 ? 0 : random.nextInt(reach * 2 + 1) - reach;
+                if (dx * dx + dz * dz > reach * reach) continue;
+
+                int sy = blocks.getHighestNonAirBelow(x + dx, scanY, z + dz);
+                if (sy < 0 || sy + 2 > scanY || blocks.getTypeId(x + dx, sy, z + dz) != Material.GRASS.getId())
+                    continue;
+
+                Location spawn = new Location(world, x + dx + 0.5, sy + 1, z + dz + 0.5);
+                if (!spawns.contains(spawn)) spawns.add(spawn);
+            }
+            if (spawns.isEmpty()) spawns.add(new Location(world, x + 0.5, topY + 1, z + 0.5));
+
+            final EntityType[] types = new EntityType[mobs];
             for (int i = 0; i < mobs; i++) {
-                world.spawnEntity(l, types[random.nextInt(types.length)]);
+                types[i] = SphereAnimalPopulator.types[random.nextInt(SphereAnimalPopulator.types.length)];
             }
 
+            // Queued once the chunk's other decorations are placed, so nothing lands in a half built cap
+            job.onComplete(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < types.length; i++) {
+                        EntitySpawnQueue.enqueue(spawns.get(i % spawns.size()), types[i]);
+                    }
+                }
+            });
+
             return true;
         }
 
@@ -18,12 +18,13 @@
 package com.turt2live.survive.populator.sphere;
 
 import com.turt2live.survive.populator.SpherePopulator;
+import com.turt2live.survive.world.PlacementJob;
+import com.turt2live.survive.world.SnapshotBlockReader;
+import com.turt2live.survive.world.VoxelEditSession;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
 
 import java.util.Random;
 
@@ -44,41 +45,41 @@ public class SphereSandPopulator extends SpherePopulator {
     }
 
     @Override
-    protected boolean populate(World world, Chunk chunk, Random random, Location center, int radius) {
+    protected boolean populate(World world, Chunk chunk, Random random, Location center, int radius, SnapshotBlockReader blocks, PlacementJob job) {
+        // Room for the platform and the tallest cacti on it
+        VoxelEditSession session = openSession(blocks, center, radius, 10);
+
         // We're going to create a level platform first (of sand...)
-        capSphere(Material.SAND, 0, center, radius);
+        capSphere(session, Material.SAND, 0, center, radius);
 
-        Location platformStart = center.add(0, radius + 1, 0);
+        int startY = center.getBlockY() + radius + 1;
+        int sand = Material.SAND.getId(), cactus = Material.CACTUS.getId();
 
         for (int z = -radius; z < radius; z++) {
             for (int x = -radius; x < radius; x++) {
                 if (random.nextDouble() < 0.05) {
-                    Block cacti = platformStart.clone().add(x, 0, z).getBlock();
+                    int bx = center.getBlockX() + x, bz = center.getBlockZ() + z;
 
                     // We'll build a cacti here
                     int height = random.nextInt(6) + 2; // 2 - 8 high
 
-                    for (int h = 0; h < height; h++) {
+                    for (int h = 0, by = startY; h < height; h++, by++) {
                         // Check safety of position
-                        Block b1 = cacti.getRelative(BlockFace.NORTH);
-                        Block b2 = cacti.getRelative(BlockFace.SOUTH);
-                        Block b3 = cacti.getRelative(BlockFace.EAST);
-                        Block b4 = cacti.getRelative(BlockFace.WEST);
-
-                        Block b5 = cacti.getRelative(BlockFace.DOWN);
-                        if (b5.getType() != Material.SAND && b5.getType() != Material.CACTUS) break; // Unsafe
+                        int below = session.getTypeId(bx, by - 1, bz);
+                        if (below != sand && below != cactus) break; // Unsafe
 
-                        if (!all(Material.AIR, b1, b2, b3, b4)) {
+                        if ((session.getNonAirNeighbours(bx, by, bz) & VoxelEditSession.HORIZONTAL) != 0) {
                             break;
                         }
 
-                        cacti.setType(Material.CACTUS);
-                        cacti = cacti.getRelative(BlockFace.UP);
+                        session.setTypeId(bx, by, bz, cactus);
                     }
                 }
             }
         }
 
+        session.commit(job);
+
         return true;
     }
 }
@@ -17,9 +17,7 @@
 
 package com.turt2live.survive.structure;
 
-import com.turt2live.survive.util.Point3D;
 import org.bukkit.Material;
-import org.bukkit.World;
 
 /**
  * Represents a sphere that is filled with another material
@@ -83,10 +81,8 @@ public class FilledSphere extends Sphere {
     }
 
     @Override
-    protected void setBlock(Point3D block, Point3D center, int radius, boolean isCenter, World world) {
-        Material material = inRadius(center, block, radius - 1) ? fill : shell;
-        if (isCenter && withDiamond) material = Material.DIAMOND_BLOCK;
-
-        world.getBlockAt(block.getX(), block.getY(), block.getZ()).setType(material);
+    protected Material getMaterial(boolean shell, boolean isCenter) {
+        if (isCenter && withDiamond) return Material.DIAMOND_BLOCK;
+        return shell ? this.shell : fill;
     }
 }
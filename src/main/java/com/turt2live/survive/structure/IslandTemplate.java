@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure;
+
+import com.turt2live.survive.util.ChunkBuffer;
+import org.bukkit.Material;
+
+/**
+ * Represents an island which is built once and then stamped into chunks
+ * during generation. The template holds whole pre-baked sections, so stamping
+ * an island costs one array copy per section it occupies.
+ * <p/>
+ * Templates are immutable and safe to share between threads.
+ *
+ * @author turt2live
+ */
+public final class IslandTemplate {
+
+    private final byte[][] sections;
+    private final int blockCount;
+
+    /**
+     * Creates a new island template from the contents of a chunk buffer. The
+     * buffer's sections are copied, so the buffer may be reused afterwards.
+     *
+     * @param buffer the buffer holding the island, cannot be null
+     */
+    public IslandTemplate(ChunkBuffer buffer) {
+        if (buffer == null) throw new IllegalArgumentException();
+
+        byte[][] source = buffer.getSections();
+        sections = new byte[source.length][];
+
+        int count = 0;
+        for (int i = 0; i < source.length; i++) {
+            if (source[i] == null) continue;
+
+            sections[i] = source[i].clone();
+            for (byte b : source[i]) {
+                if (b != 0) count++;
+            }
+        }
+        blockCount = count;
+    }
+
+    /**
+     * Stamps this island into a chunk buffer. Each section the island occupies is
+     * replaced entirely, so this should be done before anything else is written
+     * to the chunk.
+     *
+     * @param buffer the buffer to stamp into, cannot be null
+     */
+    public void stamp(ChunkBuffer buffer) {
+        if (buffer == null) throw new IllegalArgumentException();
+
+        int count = Math.min(sections.length, buffer.getMaxHeight() >> 4);
+        for (int i = 0; i < count; i++) {
+            if (sections[i] != null) {
+                System.arraycopy(sections[i], 0, buffer.section(i), 0, sections[i].length);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of non-air blocks in this island
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Builds the default island: a small dirt and stone platform with log pillars
+     * and a torch on each pillar.
+     *
+     * @param topY      the Y level the player stands at, must leave room for the island
+     * @param maxHeight the world's maximum height
+     *
+     * @return the island template
+     */
+    public static IslandTemplate createSpawnIsland(int topY, int maxHeight) {
+        if (topY < 4 || topY >= maxHeight) throw new IllegalArgumentException();
+
+        ChunkBuffer blocks = new ChunkBuffer(maxHeight);
+
+        // TODO: SPAWN IS OFF CENTER
+
+        blocks.fillBox(8, topY - 4, 8, 11, topY - 3, 11, Material.STONE.getId());
+        blocks.setBlock(9, topY - 4, 9, Material.BEDROCK.getId()); // So they don't fall..
+
+        /*
+         7  8  9  10 11
+        [x][ ][ ][ ][x] 7
+        [ ]         [ ] 8
+        [ ]         [ ] 9
+        [ ]         [ ] 10
+        [x][ ][ ][ ][x] 11
+         */
+
+        // Pillars
+        blocks.fillBox(7, topY - 4, 7, 8, topY, 8, Material.LOG.getId());
+        blocks.fillBox(7, topY - 4, 11, 8, topY, 12, Material.LOG.getId());
+        blocks.fillBox(11, topY - 4, 7, 12, topY, 8, Material.LOG.getId());
+        blocks.fillBox(11, topY - 4, 11, 12, topY, 12, Material.LOG.getId());
+
+        // Set walls
+        blocks.fillBox(8, topY - 4, 7, 11, topY - 1, 8, Material.DIRT.getId());
+        blocks.fillBox(7, topY - 4, 8, 8, topY - 1, 11, Material.DIRT.getId());
+        blocks.fillBox(11, topY - 4, 8, 12, topY - 1, 11, Material.DIRT.getId());
+        blocks.fillBox(8, topY - 4, 11, 11, topY - 1, 12, Material.DIRT.getId());
+
+        // Torches on the pillars
+        blocks.setBlock(7, topY, 7, Material.TORCH.getId());
+        blocks.setBlock(7, topY, 11, Material.TORCH.getId());
+        blocks.setBlock(11, topY, 7, Material.TORCH.getId());
+        blocks.setBlock(11, topY, 11, Material.TORCH.getId());
+
+        return new IslandTemplate(blocks);
+    }
+}
@@ -18,53 +18,63 @@
 package com.turt2live.survive.structure;
 
 import com.turt2live.survive.structure.schematic.Schematic;
+import com.turt2live.survive.structure.schematic.SchematicPastePlan;
 import com.turt2live.survive.structure.schematic.SchematicRepository;
+import com.turt2live.survive.structure.schematic.SchematicTransform;
 import com.turt2live.survive.util.Point3D;
+import com.turt2live.survive.world.BlockChangeBatch;
+import com.turt2live.survive.world.PlacementJob;
+import com.turt2live.survive.world.PlacementScheduler;
 import org.bukkit.Chunk;
 import org.bukkit.World;
-import org.bukkit.block.Block;
 import org.bukkit.generator.BlockPopulator;
 
 import java.util.Random;
 
 /**
- * Represents a structure that parses schematics
+ * Represents a structure that parses schematics. Schematics are pasted
+ * from their compiled {@link com.turt2live.survive.structure.schematic.SchematicPastePlan},
+ * so only non-air blocks are written. Each paste uses a random rotation and
+ * mirroring of the schematic.
  *
  * @author turt2live
  */
 public class SchematicPopulator extends BlockPopulator {
 
+    private static final SchematicTransform[] TRANSFORMS = SchematicTransform.values();
+
     @Override
     public void populate(World world, Random random, Chunk chunk) {
         Schematic schematic = SchematicRepository.getRandomSchematic(random);
+        SchematicTransform transform = TRANSFORMS[random.nextInt(TRANSFORMS.length)];
+        SchematicPastePlan plan = schematic == null ? null : SchematicRepository.getPastePlan(schematic, transform);
 
-        if (schematic != null) {
-            Point3D center = new Point3D(random.nextInt(16), random.nextInt(world.getMaxHeight() - schematic.getHeight()), random.nextInt(16));
+        if (plan != null && !plan.isEmpty()) {
+            Point3D center = new Point3D(random.nextInt(16), random.nextInt(world.getMaxHeight() - plan.getHeight()), random.nextInt(16));
             center = center.add(chunk.getX() * 16, 0, chunk.getZ() * 16);
 
-            System.out.println(center);
-
-            byte[] blocks = schematic.getBlockIds();
-            byte[] data = schematic.getBlockData();
-
-            for (int y = 0; y < schematic.getHeight(); y++) {
-                for (int z = 0; z < schematic.getLength(); z++) {
-                    for (int x = 0; x < schematic.getWidth(); x++) {
-                        int ox = x - (schematic.getWidth() / 2);
-                        int oy = y - (schematic.getHeight() / 2);
-                        int oz = z - (schematic.getLength() / 2);
+            int originX = center.getX() - (plan.getWidth() / 2);
+            int originY = center.getY() - (plan.getHeight() / 2);
+            int originZ = center.getZ() - (plan.getLength() / 2);
 
-                        Point3D blockPoint = center.add(ox, oy, oz);
-                        Block choice = world.getBlockAt(blockPoint.getX(), blockPoint.getY(), blockPoint.getZ());
-
-                        int index = (schematic.getHeight() * y) + (schematic.getLength() * z) + (schematic.getWidth() * x);
-                        byte bId = blocks[index];
-                        byte bData = data[index];
+            // Paste chunk by chunk into one batch, which queues writes to unloaded chunks rather than loading them
+            final BlockChangeBatch batch = new BlockChangeBatch(world);
+            SchematicPastePlan.BlockSink sink = new SchematicPastePlan.BlockSink() {
+                @Override
+                public void setBlock(int x, int y, int z, int id, byte data) {
+                    batch.setBlock(x, y, z, id, data);
+                }
+            };
 
-                        choice.setTypeIdAndData(bId, bData, true);
-                    }
+            for (int cx = plan.getMinChunkX(originX); cx <= plan.getMaxChunkX(originX); cx++) {
+                for (int cz = plan.getMinChunkZ(originZ); cz <= plan.getMaxChunkZ(originZ); cz++) {
+                    plan.paste(originX, originY, originZ, cx, cz, world.getMaxHeight(), sink);
                 }
             }
+
+            PlacementJob job = new PlacementJob(world, chunk.getX(), chunk.getZ());
+            job.add(batch);
+            PlacementScheduler.schedule(job);
         }
     }
 }
@@ -17,8 +17,13 @@
 
 package com.turt2live.survive.structure;
 
+import com.turt2live.survive.util.ChunkBuffer;
 import com.turt2live.survive.util.Point3D;
+import com.turt2live.survive.world.BlockChangeBatch;
+import com.turt2live.survive.world.PlacementJob;
+import com.turt2live.survive.world.PlacementScheduler;
 import org.bukkit.Chunk;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.util.Vector;
 
@@ -59,24 +64,37 @@ public abstract class Sphere implements Structure {
     }
 
     /**
-     * Determines if a point is within a circle's radius.
-     * <p/>
-     * This returns false if either point is null.
+     * Gets the smallest radius this sphere can be generated with
      *
-     * @param center the sphere center, cannot be null
-     * @param target the target point, cannot be null
-     * @param radius the radius of the sphere, must be >0
+     * @return the minimum radius
+     */
+    public int getMinRadius() {
+        return minRadius;
+    }
+
+    /**
+     * Gets the largest radius this sphere can be generated with
      *
-     * @return true if the point is within the radius, false otherwise
+     * @return the maximum radius
      */
-    protected boolean inRadius(Point3D center, Point3D target, int radius) {
-        if (radius <= 0) throw new IllegalArgumentException();
-        return !(center == null || target == null) && center.distanceSquared(target) < radius * radius;
+    public int getMaxRadius() {
+        return maxRadius;
+    }
+
+    /**
+     * Picks a radius for a new sphere
+     *
+     * @param random the random to use, cannot be null
+     *
+     * @return the radius
+     */
+    public int pickRadius(Random random) {
+        return maxRadius == minRadius ? maxRadius : random.nextInt(maxRadius - minRadius) + minRadius;
     }
 
     @Override
     public final Vector generate(World world, Chunk chunk, Random random, Point3D center) {
-        int radius = maxRadius == minRadius ? maxRadius : random.nextInt(maxRadius - minRadius) + minRadius;
+        int radius = pickRadius(random);
 
         doGeneration(radius, center, world);
 
@@ -84,8 +102,10 @@ public abstract class Sphere implements Structure {
     }
 
     /**
-     * Runs the generation of the sphere, calling {@link #setBlock(com.turt2live.survive.util.Point3D, com.turt2live.survive.util.Point3D, int, boolean, org.bukkit.World)}
-     * where possible.
+     * Runs the generation of the sphere, calling {@link #getMaterial(boolean, boolean)}
+     * once per group of voxels rather than once per voxel. The blocks are written as
+     * one {@link com.turt2live.survive.world.BlockChangeBatch}, through the
+     * {@link com.turt2live.survive.world.PlacementScheduler}.
      *
      * @param radius the radius of the sphere. must be >0
      * @param center the sphere center, cannot be null
@@ -94,38 +114,55 @@ public abstract class Sphere implements Structure {
     protected void doGeneration(int radius, Point3D center, World world) {
         if (radius <= 0) throw new IllegalArgumentException();
 
-        for (int y = 0; y < radius; y++) {
-            for (int x = 0; x < radius; x++) {
-                for (int z = 0; z < radius; z++) {
-                    Point3D block1 = center.add(x, y, z);
-
-                    if (inRadius(center, block1, radius)) {
-                        setBlock(block1, center, radius, center.equals(block1), world);
-
-                        // If the first block is in the radius, so are all the others
-                        for (int i = 1; i < 8; i++) { // i = 1 because i = 0 is already handled above
-                            int mx = (i & 0x04) != 0 ? -x : x; // 0100
-                            int my = (i & 0x02) != 0 ? -y : y; // 0010
-                            int mz = (i & 0x01) != 0 ? -z : z; // 0001
-
-                            Point3D block = center.add(mx, my, mz);
-                            setBlock(block, center, radius, center.equals(block), world);
-                        }
-                    }
-                }
-            }
+        SphereTemplate template = SphereTemplate.get(radius);
+        BlockChangeBatch batch = new BlockChangeBatch(world);
+
+        place(template.getShell(), getMaterial(true, false), getMaterial(true, true), center, batch);
+        place(template.getInterior(), getMaterial(false, false), getMaterial(false, true), center, batch);
+
+        PlacementJob job = new PlacementJob(world, center.getX() >> 4, center.getZ() >> 4);
+        job.add(batch);
+        PlacementScheduler.schedule(job);
+    }
+
+    /**
+     * Writes this sphere into a chunk buffer. Any part of the sphere outside of the
+     * chunk is skipped.
+     *
+     * @param buffer  the buffer to write to, cannot be null
+     * @param originX the center X, relative to the buffer's chunk
+     * @param originY the center Y
+     * @param originZ the center Z, relative to the buffer's chunk
+     * @param radius  the radius of the sphere, must be >0
+     */
+    public void rasterize(ChunkBuffer buffer, int originX, int originY, int originZ, int radius) {
+        SphereTemplate template = SphereTemplate.get(radius);
+
+        buffer.writeVoxels(originX, originY, originZ, template.getShell(), getMaterial(true, false).getId());
+        buffer.writeVoxels(originX, originY, originZ, template.getInterior(), getMaterial(false, false).getId());
+
+        boolean centerInShell = template.getInterior().length == 0;
+        Material center = getMaterial(centerInShell, true);
+        if (center != getMaterial(centerInShell, false)) buffer.setBlock(originX, originY, originZ, center.getId());
+    }
+
+    private void place(int[] voxels, Material material, Material centerMaterial, Point3D center, BlockChangeBatch batch) {
+        int cx = center.getX(), cy = center.getY(), cz = center.getZ();
+
+        for (int voxel : voxels) {
+            Material type = voxel == SphereTemplate.CENTER ? centerMaterial : material;
+            batch.setBlock(cx + ChunkBuffer.unpackX(voxel), cy + ChunkBuffer.unpackY(voxel), cz + ChunkBuffer.unpackZ(voxel), type);
         }
     }
 
     /**
-     * Sets a block in the world. This should only be called by {@link #doGeneration(int, com.turt2live.survive.util.Point3D, org.bukkit.World)}
-     * and therefore should have no null arguments.
+     * Gets the material used for part of the sphere. This is called once per generation
+     * for each combination of arguments, not once per block.
+     *
+     * @param shell    true for the outermost layer of the sphere, false for the interior
+     * @param isCenter true for the center block of the sphere
      *
-     * @param block    the block location to set
-     * @param center   the center of the sphere
-     * @param radius   the radius of the sphere
-     * @param isCenter true if the test block is the center
-     * @param world    the applicable world
+     * @return the material to use, never null
      */
-    protected abstract void setBlock(Point3D block, Point3D center, int radius, boolean isCenter, World world);
+    protected abstract Material getMaterial(boolean shell, boolean isCenter);
 }
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure;
+
+import com.turt2live.survive.StructureRepository;
+import com.turt2live.survive.util.ChunkBuffer;
+import com.turt2live.survive.util.ChunkRandom;
+
+import java.util.Collections;
+
+/**
+ * Decides where spheres are placed. Each chunk may be the origin of one sphere,
+ * chosen only from (world seed, chunk x, chunk z), so any chunk can work out
+ * which of its neighbours' spheres reach into it without those neighbours
+ * having been generated.
+ * <p/>
+ * This is safe to use from multiple threads.
+ *
+ * @author turt2live
+ */
+public final class SphereLayout {
+
+    // Stream salt for sphere selection, see ChunkRandom
+    private static final long SPHERE_SALT = 0x53504845524553L;
+    private static final int MIN_Y = 32;
+
+    private final int reach;
+    private final StructureRepository.StructureSampler spheres = StructureRepository.getSampler(Collections.<Class<? extends Structure>>singletonList(Sphere.class));
+    private final ThreadLocal<ChunkRandom> scratchRandom = new ThreadLocal<ChunkRandom>() {
+        @Override
+        protected ChunkRandom initialValue() {
+            return new ChunkRandom(0);
+        }
+    };
+
+    public SphereLayout() {
+        int maxRadius = 1;
+        for (Structure structure : StructureRepository.getStructures()) {
+            if (structure instanceof Sphere) maxRadius = Math.max(maxRadius, ((Sphere) structure).getMaxRadius());
+        }
+
+        // A sphere centered anywhere in a chunk can reach this many chunks away
+        this.reach = (maxRadius + 15) >> 4;
+    }
+
+    /**
+     * Gets the sphere placed from a chunk, if any. The supplied random is reset to the
+     * chunk's stream and is left just after the values used for the placement, so the
+     * caller can keep drawing from it (for decorations, for example).
+     *
+     * @param seed      the world seed
+     * @param maxHeight the world's maximum height
+     * @param chunkX    the chunk X coordinate
+     * @param chunkZ    the chunk Z coordinate
+     * @param random    the random to use, cannot be null
+     *
+     * @return the placement, or null if the chunk has no sphere
+     */
+    public SpherePlacement getPlacement(long seed, int maxHeight, int chunkX, int chunkZ, ChunkRandom random) {
+        if (random == null) throw new IllegalArgumentException();
+        random.reset(seed, chunkX, chunkZ, SPHERE_SALT);
+
+        Structure structure = spheres.sample(random);
+        if (structure == null) return null;
+
+        // We need to choose a suitable Y location
+        int cy = random.nextInt(maxHeight - MIN_Y - MIN_Y) + MIN_Y; // Keep within world bounds
+        int cx = random.nextInt(16);
+        int cz = random.nextInt(16);
+
+        Sphere sphere = (Sphere) structure;
+        int radius = sphere.pickRadius(random);
+
+        return new SpherePlacement(sphere, (chunkX << 4) + cx, cy, (chunkZ << 4) + cz, radius);
+    }
+
+    /**
+     * Writes every sphere which overlaps a chunk into the chunk's buffer. This
+     * includes spheres placed from neighbouring chunks.
+     *
+     * @param buffer the chunk's buffer, cannot be null
+     * @param seed   the world seed
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     * @param filter the chunks which may place spheres, or null for all chunks
+     */
+    public void rasterize(ChunkBuffer buffer, long seed, int chunkX, int chunkZ, SourceFilter filter) {
+        ChunkRandom random = scratchRandom.get();
+
+        for (int ox = -reach; ox <= reach; ox++) {
+            for (int oz = -reach; oz <= reach; oz++) {
+                int sx = chunkX + ox, sz = chunkZ + oz;
+                if (filter != null && !filter.canPlace(sx, sz)) continue;
+
+                SpherePlacement placement = getPlacement(seed, buffer.getMaxHeight(), sx, sz, random);
+                if (placement != null) placement.rasterize(buffer, chunkX, chunkZ);
+            }
+        }
+    }
+
+    /**
+     * Decides which chunks may place spheres
+     */
+    public static interface SourceFilter {
+
+        /**
+         * Determines if a chunk may place a sphere
+         *
+         * @param chunkX the chunk X coordinate
+         * @param chunkZ the chunk Z coordinate
+         *
+         * @return true if the chunk may place a sphere, false otherwise
+         */
+        public boolean canPlace(int chunkX, int chunkZ);
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure;
+
+import com.turt2live.survive.util.ChunkBuffer;
+
+/**
+ * Represents where a sphere has been placed in the world. Placements are
+ * decided per chunk (see {@link com.turt2live.survive.structure.SphereLayout})
+ * and rasterized into every chunk they overlap while those chunks generate.
+ *
+ * @author turt2live
+ */
+public final class SpherePlacement {
+
+    private final Sphere sphere;
+    private final int x, y, z;
+    private final int radius;
+
+    /**
+     * Creates a new sphere placement
+     *
+     * @param sphere the sphere, cannot be null
+     * @param x      the center X (world coordinates)
+     * @param y      the center Y
+     * @param z      the center Z (world coordinates)
+     * @param radius the radius, must be >0
+     */
+    public SpherePlacement(Sphere sphere, int x, int y, int z, int radius) {
+        if (sphere == null || radius <= 0) throw new IllegalArgumentException();
+
+        this.sphere = sphere;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.radius = radius;
+    }
+
+    public Sphere getSphere() {
+        return sphere;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Determines if this sphere has any blocks within a chunk
+     *
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     *
+     * @return true if the sphere overlaps the chunk, false otherwise
+     */
+    public boolean overlaps(int chunkX, int chunkZ) {
+        int minX = chunkX << 4, minZ = chunkZ << 4;
+        return x + radius > minX && x - radius < minX + 16 && z + radius > minZ && z - radius < minZ + 16;
+    }
+
+    /**
+     * Writes the part of this sphere that lies within a chunk into that chunk's buffer
+     *
+     * @param buffer the chunk's buffer, cannot be null
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     */
+    public void rasterize(ChunkBuffer buffer, int chunkX, int chunkZ) {
+        if (!overlaps(chunkX, chunkZ)) return;
+
+        sphere.rasterize(buffer, x - (chunkX << 4), y, z - (chunkZ << 4), radius);
+    }
+}
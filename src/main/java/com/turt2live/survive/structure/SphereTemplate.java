@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure;
+
+import com.turt2live.survive.util.ChunkBuffer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Represents the voxels of a sphere of a given radius, relative to its
+ * center. The voxels are split into the shell (the outermost layer) and the
+ * interior, and stored as packed offsets (see {@link com.turt2live.survive.util.ChunkBuffer#packOffset(int, int, int)}).
+ * <p/>
+ * Templates are built once per radius and shared, see {@link #get(int)}.
+ *
+ * @author turt2live
+ */
+public final class SphereTemplate {
+
+    /**
+     * The largest radius supported by templates
+     */
+    public static final int MAX_RADIUS = 255;
+
+    /**
+     * The packed offset of the sphere's center
+     */
+    public static final int CENTER = ChunkBuffer.packOffset(0, 0, 0);
+
+    private static final AtomicReferenceArray<SphereTemplate> CACHE = new AtomicReferenceArray<SphereTemplate>(MAX_RADIUS + 1);
+
+    private final int radius;
+    private final int[] shell;
+    private final int[] interior;
+
+    private SphereTemplate(int radius) {
+        this.radius = radius;
+
+        // A voxel is in the sphere when it is closer than the radius, and in the
+        // interior when it is closer than the radius less one.
+        int outer = radius * radius;
+        int inner = (radius - 1) * (radius - 1);
+        int max = radius - 1;
+
+        int shellCount = 0, interiorCount = 0;
+        for (int y = -max; y <= max; y++) {
+            for (int z = -max; z <= max; z++) {
+                for (int x = -max; x <= max; x++) {
+                    int d = x * x + y * y + z * z;
+                    if (d < inner) interiorCount++;
+                    else if (d < outer) shellCount++;
+                }
+            }
+        }
+
+        shell = new int[shellCount];
+        interior = new int[interiorCount];
+        shellCount = interiorCount = 0;
+
+        for (int y = -max; y <= max; y++) {
+            for (int z = -max; z <= max; z++) {
+                for (int x = -max; x <= max; x++) {
+                    int d = x * x + y * y + z * z;
+                    if (d < inner) interior[interiorCount++] = ChunkBuffer.packOffset(x, y, z);
+                    else if (d < outer) shell[shellCount++] = ChunkBuffer.packOffset(x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the radius of this template
+     *
+     * @return the radius
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Gets the packed offsets of the shell. The returned array must not be modified.
+     *
+     * @return the shell voxels
+     */
+    public int[] getShell() {
+        return shell;
+    }
+
+    /**
+     * Gets the packed offsets of the interior. The returned array must not be modified.
+     *
+     * @return the interior voxels
+     */
+    public int[] getInterior() {
+        return interior;
+    }
+
+    /**
+     * Gets the total number of voxels in this sphere
+     *
+     * @return the number of voxels
+     */
+    public int getVolume() {
+        return shell.length + interior.length;
+    }
+
+    /**
+     * Gets the template for a radius, building it if it has not been used yet
+     *
+     * @param radius the radius, must be between 1 and {@link #MAX_RADIUS}
+     *
+     * @return the template
+     */
+    public static SphereTemplate get(int radius) {
+        if (radius <= 0 || radius > MAX_RADIUS) throw new IllegalArgumentException();
+
+        SphereTemplate template = CACHE.get(radius);
+        if (template == null) {
+            CACHE.compareAndSet(radius, null, new SphereTemplate(radius));
+            template = CACHE.get(radius);
+        }
+        return template;
+    }
+}
@@ -17,11 +17,8 @@
 
 package com.turt2live.survive.structure.schematic;
 
-import org.jnbt.*;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
 
 /**
  * Represents a schematic loaded from a stream
@@ -35,26 +32,24 @@ public class EmbeddedSchematic implements Schematic {
     private int w, l, h;
 
     /**
-     * Creates a new embedded schematic from a stream of a schematic file
+     * Creates a new embedded schematic from a stream of a schematic file. The
+     * stream is read with a {@link com.turt2live.survive.structure.schematic.SchematicStreamReader}
+     * and closed.
      *
      * @param stream the stream to read from, cannot be null
      */
     public EmbeddedSchematic(InputStream stream) throws IOException {
         if (stream == null) throw new IllegalArgumentException();
 
-        NBTInputStream is = new NBTInputStream(stream);
-
-        CompoundTag root = (CompoundTag) is.readTag();
-        Map<String, Tag> tags = root.getValue();
-
-        w = ((ShortTag) tags.get("Width")).getValue();
-        h = ((ShortTag) tags.get("Height")).getValue();
-        l = ((ShortTag) tags.get("Length")).getValue();
+        SchematicStreamReader reader = new SchematicStreamReader(stream);
+        reader.read();
 
-        data = ((ByteArrayTag) tags.get("Data")).getValue();
-        blockIds = ((ByteArrayTag) tags.get("Blocks")).getValue();
+        w = reader.getWidth();
+        h = reader.getHeight();
+        l = reader.getLength();
 
-        is.close();
+        data = reader.getBlockData();
+        blockIds = reader.getBlockIds();
     }
 
     @Override
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a schematic backed by a memory mapped cache entry (see
+ * {@link com.turt2live.survive.structure.schematic.SchematicCache}). The block
+ * arrays are not held on the heap: {@link #getBlockIdBuffer()} and
+ * {@link #getBlockDataBuffer()} read straight from the mapping, while each call
+ * to {@link #getBlockIds()} or {@link #getBlockData()} copies the whole volume
+ * out of it and should be avoided.
+ *
+ * @author turt2live
+ */
+public class MappedSchematic implements Schematic {
+
+    private final ByteBuffer ids, data;
+    private final int w, h, l;
+
+    /**
+     * Creates a new mapped schematic
+     *
+     * @param buffer the mapped cache entry, cannot be null
+     *
+     * @throws IOException if the entry is not a valid cache entry
+     */
+    MappedSchematic(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < SchematicCache.HEADER_SIZE
+                || buffer.getInt(0) != SchematicCache.MAGIC
+                || buffer.getInt(4) != SchematicCache.VERSION)
+            throw new IOException("Not a schematic cache entry");
+
+        w = buffer.getInt(8);
+        h = buffer.getInt(12);
+        l = buffer.getInt(16);
+        if (w < 0 || h < 0 || l < 0 || buffer.capacity() != SchematicCache.HEADER_SIZE + 2L * w * h * l)
+            throw new IOException("Truncated schematic cache entry");
+
+        ids = view(buffer, SchematicCache.HEADER_SIZE, w * h * l);
+        data = view(buffer, SchematicCache.HEADER_SIZE + w * h * l, w * h * l);
+    }
+
+    /**
+     * Gets a read-only view of the block IDs in the mapping. Only absolute reads should be
+     * used, as the view is shared.
+     *
+     * @return the block IDs, indexed like {@link #getBlockIds()}
+     */
+    public ByteBuffer getBlockIdBuffer() {
+        return ids;
+    }
+
+    /**
+     * Gets a read-only view of the block data in the mapping. Only absolute reads should be
+     * used, as the view is shared.
+     *
+     * @return the block data, indexed like {@link #getBlockData()}
+     */
+    public ByteBuffer getBlockDataBuffer() {
+        return data;
+    }
+
+    @Override
+    public byte[] getBlockData() {
+        return copy(data);
+    }
+
+    @Override
+    public byte[] getBlockIds() {
+        return copy(ids);
+    }
+
+    /**
+     * Gets the block IDs of a schematic as a buffer, without copying them out of a mapping
+     *
+     * @param schematic the schematic, cannot be null
+     *
+     * @return the block IDs
+     */
+    static ByteBuffer blockIds(Schematic schematic) {
+        return schematic instanceof MappedSchematic ? ((MappedSchematic) schematic).ids : ByteBuffer.wrap(schematic.getBlockIds());
+    }
+
+    /**
+     * Gets the block data of a schematic as a buffer, without copying it out of a mapping
+     *
+     * @param schematic the schematic, cannot be null
+     *
+     * @return the block data
+     */
+    static ByteBuffer blockData(Schematic schematic) {
+        return schematic instanceof MappedSchematic ? ((MappedSchematic) schematic).data : ByteBuffer.wrap(schematic.getBlockData());
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + size);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    private static byte[] copy(ByteBuffer view) {
+        byte[] copy = new byte[view.capacity()];
+        view.duplicate().get(copy);
+        return copy;
+    }
+
+    @Override
+    public int getWidth() {
+        return w;
+    }
+
+    @Override
+    public int getHeight() {
+        return h;
+    }
+
+    @Override
+    public int getLength() {
+        return l;
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import java.util.Arrays;
+
+/**
+ * Represents a schematic stored as a palette of the distinct block ID and data
+ * pairs it uses, plus one bit-packed palette index per block. Most schematics
+ * use a handful of block types, so this takes a few bits per block instead of
+ * the two bytes per block of an {@link com.turt2live.survive.structure.schematic.EmbeddedSchematic}.
+ * <p/>
+ * Indices never span two longs: each long holds 64 / bits indices.
+ *
+ * @author turt2live
+ */
+public final class PackedSchematic implements Schematic {
+
+    private final int w, h, l;
+    private final char[] palette; // id << 4 | data
+    private final int bits, perLong;
+    private final long[] words;
+
+    private PackedSchematic(int w, int h, int l, char[] palette, long[] words, int bits) {
+        this.w = w;
+        this.h = h;
+        this.l = l;
+        this.palette = palette;
+        this.words = words;
+        this.bits = bits;
+        this.perLong = 64 / bits;
+    }
+
+    /**
+     * Packs a schematic
+     *
+     * @param schematic the schematic to pack, cannot be null
+     *
+     * @return the packed schematic
+     */
+    public static PackedSchematic pack(Schematic schematic) {
+        if (schematic == null) throw new IllegalArgumentException();
+        if (schematic instanceof PackedSchematic) return (PackedSchematic) schematic;
+
+        int w = schematic.getWidth(), h = schematic.getHeight(), l = schematic.getLength();
+        int volume = w * h * l;
+        byte[] ids = schematic.getBlockIds();
+        byte[] data = schematic.getBlockData();
+
+        // First pass: find the palette
+        int[] lookup = new int[256 << 4];
+        Arrays.fill(lookup, -1);
+        char[] palette = new char[16];
+        int size = 0;
+        for (int i = 0; i < volume; i++) {
+            int key = ((ids[i] & 0xFF) << 4) | (data[i] & 0xF);
+            if (lookup[key] < 0) {
+                if (size == palette.length) palette = Arrays.copyOf(palette, size * 2);
+                palette[size] = (char) key;
+                lookup[key] = size++;
+            }
+        }
+
+        int bits = size <= 1 ? 1 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        int perLong = 64 / bits;
+        long[] words = new long[(volume + perLong - 1) / perLong];
+
+        // Second pass: write the indices
+        for (int i = 0; i < volume; i++) {
+            long index = lookup[((ids[i] & 0xFF) << 4) | (data[i] & 0xF)];
+            words[i / perLong] |= index << ((i % perLong) * bits);
+        }
+
+        return new PackedSchematic(w, h, l, Arrays.copyOf(palette, size), words, bits);
+    }
+
+    /**
+     * Gets the number of distinct block ID and data pairs in this schematic
+     *
+     * @return the palette size
+     */
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    /**
+     * Gets the number of bits used for each block
+     *
+     * @return the bits per block
+     */
+    public int getBitsPerBlock() {
+        return bits;
+    }
+
+    /**
+     * Gets the approximate number of bytes used by this schematic
+     *
+     * @return the approximate size in bytes
+     */
+    public long getMemoryUsage() {
+        return 64L + palette.length * 2L + words.length * 8L;
+    }
+
+    private int paletteEntry(int i) {
+        long mask = (1L << bits) - 1;
+        return palette[(int) ((words[i / perLong] >>> ((i % perLong) * bits)) & mask)];
+    }
+
+    @Override
+    public byte[] getBlockData() {
+        byte[] data = new byte[w * h * l];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (paletteEntry(i) & 0xF);
+        }
+        return data;
+    }
+
+    @Override
+    public byte[] getBlockIds() {
+        byte[] ids = new byte[w * h * l];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (byte) (paletteEntry(i) >> 4);
+        }
+        return ids;
+    }
+
+    @Override
+    public int getWidth() {
+        return w;
+    }
+
+    @Override
+    public int getHeight() {
+        return h;
+    }
+
+    @Override
+    public int getLength() {
+        return l;
+    }
+}
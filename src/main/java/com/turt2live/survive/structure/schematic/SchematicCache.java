@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Represents an on-disk cache of decoded schematics. Each entry is an
+ * uncompressed copy of a schematic's dimensions, block IDs and block data,
+ * named after the SHA-1 of the source schematic file. When the source changes
+ * its hash changes too, so a stale entry is never used and a new one is
+ * written instead.
+ * <p/>
+ * Entries are memory mapped rather than read, see {@link com.turt2live.survive.structure.schematic.MappedSchematic}.
+ * The format is: magic (int), version (int), width, height, length (ints),
+ * block IDs (width * height * length bytes), block data (same size).
+ *
+ * @author turt2live
+ */
+public class SchematicCache {
+
+    static final int MAGIC = 0x53565343; // SVSC
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+
+    private static final String EXTENSION = ".sbin";
+
+    private final File directory;
+    private final Set<String> used = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Creates a new schematic cache
+     *
+     * @param directory the directory to keep the cache in, cannot be null. Created if missing.
+     */
+    public SchematicCache(File directory) {
+        if (directory == null) throw new IllegalArgumentException();
+
+        this.directory = directory;
+    }
+
+    /**
+     * Gets a cached schematic for a source file
+     *
+     * @param source the raw bytes of the source schematic file, cannot be null
+     *
+     * @return the cached schematic, or null if it is not cached (or the entry is unreadable)
+     */
+    public Schematic get(byte[] source) {
+        String key = key(source);
+        used.add(key);
+
+        File file = new File(directory, key + EXTENSION);
+        if (!file.isFile()) return null;
+
+        try {
+            return map(file);
+        } catch (IOException e) {
+            return null; // Rewritten by put()
+        }
+    }
+
+    /**
+     * Stores a decoded schematic in the cache and returns the cached copy
+     *
+     * @param source    the raw bytes of the source schematic file, cannot be null
+     * @param schematic the decoded schematic, cannot be null
+     *
+     * @return the cached schematic
+     *
+     * @throws IOException if the entry cannot be written
+     */
+    public Schematic put(byte[] source, Schematic schematic) throws IOException {
+        if (schematic == null) throw new IllegalArgumentException();
+
+        String key = key(source);
+        used.add(key);
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create cache directory " + directory);
+
+        int volume = schematic.getWidth() * schematic.getHeight() * schematic.getLength();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putInt(schematic.getWidth()).putInt(schematic.getHeight()).putInt(schematic.getLength());
+
+        // Write beside the entry then move it in place, so a partial entry is never mapped. The
+        // temporary name is unique, as two threads may be storing the same source at once.
+        File temp = File.createTempFile(key + ".", EXTENSION + ".tmp", directory);
+        FileOutputStream out = new FileOutputStream(temp);
+        boolean written = false;
+        try {
+            out.write(header.array());
+            out.write(schematic.getBlockIds(), 0, volume);
+            out.write(schematic.getBlockData(), 0, volume);
+            written = true;
+        } finally {
+            out.close();
+            if (!written) temp.delete();
+        }
+
+        File file = new File(directory, key + EXTENSION);
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            temp.delete();
+            if (!file.isFile()) throw new IOException("Cannot move cache entry into place");
+            // Otherwise another thread stored the same entry first, which is just as good
+        }
+
+        return map(file);
+    }
+
+    /**
+     * Deletes every cache entry which has not been used since this cache was created
+     *
+     * @return the number of entries deleted
+     */
+    public int prune() {
+        File[] files = directory.listFiles();
+        if (files == null) return 0;
+
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(EXTENSION) && !name.endsWith(EXTENSION + ".tmp")) continue;
+
+            String key = name.substring(0, name.indexOf('.'));
+            if (!used.contains(key) && file.delete()) deleted++;
+        }
+        return deleted;
+    }
+
+    private MappedSchematic map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedSchematic(buffer); // The mapping stays valid after the file is closed
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Computes the cache key of a source schematic file
+     *
+     * @param source the raw bytes of the source file, cannot be null
+     *
+     * @return the key, as a hex string
+     */
+    static String key(byte[] source) {
+        if (source == null) throw new IllegalArgumentException();
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(source);
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Loads the schematics listed in a plugin's schematic listing on a pool of
+ * worker threads. Each schematic is registered with the {@link com.turt2live.survive.structure.schematic.SchematicRepository}
+ * as soon as it is loaded, so generation can use the schematics which are
+ * ready while the rest are still loading.
+ * <p/>
+ * The listing has one schematic per line: the file name (relative to the
+ * listing's folder) followed by a space and the chance of the schematic.
+ * <p/>
+ * If a {@link com.turt2live.survive.structure.schematic.SchematicCache} is given,
+ * schematics already in the cache are mapped from it instead of being decoded,
+ * and the rest are added to it. Unused cache entries are pruned once every
+ * schematic has been loaded.
+ *
+ * @author turt2live
+ */
+public class SchematicLoader {
+
+    private final Plugin plugin;
+    private final int threads;
+    private final boolean logTimings;
+    private final SchematicCache cache;
+
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private volatile long startNanos;
+
+    /**
+     * Creates a new schematic loader
+     *
+     * @param plugin     the plugin which holds the schematics, cannot be null
+     * @param threads    the number of worker threads, or 0 for one per processor
+     * @param logTimings if true, the time taken by each schematic is logged
+     * @param cache      the cache to use, or null to always decode schematics
+     */
+    public SchematicLoader(Plugin plugin, int threads, boolean logTimings, SchematicCache cache) {
+        if (plugin == null || threads < 0) throw new IllegalArgumentException();
+
+        this.plugin = plugin;
+        this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.logTimings = logTimings;
+        this.cache = cache;
+    }
+
+    /**
+     * Reads a listing and starts loading every schematic in it. This returns as soon
+     * as the listing has been read.
+     *
+     * @param listing the path of the listing within the plugin, such as "schematics/schematics.txt"
+     *
+     * @throws IOException if the listing cannot be read
+     */
+    public void loadAll(String listing) throws IOException {
+        InputStream stream = plugin.getResource(listing);
+        if (stream == null) throw new IOException("Missing schematic listing: " + listing);
+
+        String folder = listing.contains("/") ? listing.substring(0, listing.lastIndexOf('/') + 1) : "";
+        List<String> files = new ArrayList<String>();
+        List<Double> chances = new ArrayList<Double>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                String[] parts = line.split(" ");
+                try {
+                    chances.add(Double.parseDouble(parts[1]));
+                    files.add(folder + parts[0]);
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning("Invalid schematic listing entry: " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (files.isEmpty()) return;
+
+        SchematicRepository.expect(files.size());
+        remaining.addAndGet(files.size());
+        startNanos = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SURVIVE schematic loader #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (int i = 0; i < files.size(); i++) {
+            final String file = files.get(i);
+            final double chance = chances.get(i);
+
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    load(file, chance);
+                }
+            });
+        }
+
+        executor.shutdown(); // Threads exit once the queue is drained
+    }
+
+    private void load(String file, double chance) {
+        long start = System.nanoTime();
+
+        try {
+            InputStream stream = plugin.getResource(file);
+            if (stream == null) throw new IOException("Missing schematic file");
+
+            boolean cached = false;
+            Schematic schematic;
+            if (cache == null) {
+                schematic = new EmbeddedSchematic(stream);
+            } else {
+                byte[] source = readFully(stream);
+                schematic = cache.get(source);
+                if (schematic != null) {
+                    cached = true;
+                } else {
+                    schematic = new EmbeddedSchematic(new ByteArrayInputStream(source));
+                    try {
+                        schematic = cache.put(source, schematic);
+                    } catch (IOException e) {
+                        plugin.getLogger().log(Level.WARNING, "Could not cache schematic " + file, e);
+                    }
+                }
+            }
+
+            SchematicRepository.register(schematic, chance);
+
+            long took = System.nanoTime() - start;
+            totalNanos.addAndGet(took);
+            if (logTimings)
+                plugin.getLogger().info("Loaded schematic " + file + (cached ? " from cache" : "") + " in " + millis(took) + "ms");
+        } catch (Exception e) {
+            SchematicRepository.reportFailure();
+            plugin.getLogger().log(Level.WARNING, "Error loading schematic " + file, e);
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                plugin.getLogger().info("Loaded " + SchematicRepository.getLoadedCount() + " schematics ("
+                        + SchematicRepository.getFailedCount() + " failed) in " + millis(System.nanoTime() - startNanos)
+                        + "ms, " + millis(totalNanos.get()) + "ms of work on " + threads + " threads");
+
+                if (cache != null) {
+                    int pruned = cache.prune();
+                    if (pruned > 0) plugin.getLogger().info("Pruned " + pruned + " stale schematic cache entries");
+                }
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(nanos / 1000000L);
+    }
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a schematic compiled for pasting. The schematic is trimmed to the
+ * box which holds its non-air blocks and those blocks are stored as runs along
+ * the X axis, bucketed into 16x16x16 cells. Pasting into a chunk only visits the
+ * cells which can overlap that chunk and never visits air.
+ * <p/>
+ * Positions are given as the world position of the schematic's (0, 0, 0) corner,
+ * before trimming. Plans are immutable and safe to share between threads.
+ *
+ * @author turt2live
+ */
+public final class SchematicPastePlan {
+
+    /**
+     * Receives the blocks of a paste
+     */
+    public static interface BlockSink {
+
+        /**
+         * Called for each block being pasted
+         *
+         * @param x    the world X coordinate
+         * @param y    the world Y coordinate
+         * @param z    the world Z coordinate
+         * @param id   the block ID
+         * @param data the block data
+         */
+        public void setBlock(int x, int y, int z, int id, byte data);
+    }
+
+    private final int width, height, length;
+    private final int minX, minY, minZ; // Trimmed box, relative to the schematic
+    private final int sizeX, sizeY, sizeZ;
+    private final int cellsX, cellsY, cellsZ;
+
+    private final int[] cellStart; // First run of each cell, plus one extra entry for the end
+    private final int[] runPosition; // Packed x, y, z relative to the trimmed box
+    private final int[] runOffset; // Offset into ids/data, plus one extra entry for the end
+    private final byte[] ids;
+    private final byte[] data;
+
+    private SchematicPastePlan(Schematic schematic) {
+        width = schematic.getWidth();
+        height = schematic.getHeight();
+        length = schematic.getLength();
+
+        // Mapped schematics are read in place rather than copied onto the heap
+        ByteBuffer sourceIds = MappedSchematic.blockIds(schematic);
+        ByteBuffer sourceData = MappedSchematic.blockData(schematic);
+        if (sourceIds.capacity() < width * height * length || sourceData.capacity() < sourceIds.capacity())
+            throw new IllegalArgumentException("Schematic arrays do not match its dimensions");
+
+        // Find the box of non-air blocks
+        int lowX = width, lowY = height, lowZ = length, highX = -1, highY = -1, highZ = -1;
+        int blocks = 0;
+        for (int y = 0; y < height; y++) {
+            for (int z = 0; z < length; z++) {
+                int row = (y * length + z) * width;
+                for (int x = 0; x < width; x++) {
+                    if (sourceIds.get(row + x) == 0) continue;
+
+                    blocks++;
+                    if (x < lowX) lowX = x;
+                    if (x > highX) highX = x;
+                    if (y < lowY) lowY = y;
+                    if (y > highY) highY = y;
+                    if (z < lowZ) lowZ = z;
+                    if (z > highZ) highZ = z;
+                }
+            }
+        }
+
+        if (blocks == 0) {
+            lowX = lowY = lowZ = 0;
+            highX = highY = highZ = -1;
+        }
+
+        minX = lowX;
+        minY = lowY;
+        minZ = lowZ;
+        sizeX = highX - lowX + 1;
+        sizeY = highY - lowY + 1;
+        sizeZ = highZ - lowZ + 1;
+        if (sizeX > 1024 || sizeY > 1024 || sizeZ > 1024)
+            throw new IllegalArgumentException("Schematic is too large to paste");
+
+        cellsX = (sizeX + 15) >> 4;
+        cellsY = (sizeY + 15) >> 4;
+        cellsZ = (sizeZ + 15) >> 4;
+
+        // Collect runs cell by cell, splitting them on cell borders
+        int cellCount = cellsX * cellsY * cellsZ;
+        cellStart = new int[cellCount + 1];
+        ids = new byte[blocks];
+        data = new byte[blocks];
+
+        List<int[]> runs = new ArrayList<int[]>();
+        int written = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStart[cell] = runs.size();
+
+            int cx = cell % cellsX, cz = (cell / cellsX) % cellsZ, cy = cell / (cellsX * cellsZ);
+            int endX = Math.min(sizeX, (cx + 1) << 4);
+            int endY = Math.min(sizeY, (cy + 1) << 4);
+            int endZ = Math.min(sizeZ, (cz + 1) << 4);
+
+            for (int y = cy << 4; y < endY; y++) {
+                for (int z = cz << 4; z < endZ; z++) {
+                    int row = ((y + minY) * length + (z + minZ)) * width + minX;
+
+                    int x = cx << 4;
+                    while (x < endX) {
+                        if (sourceIds.get(row + x) == 0) {
+                            x++;
+                            continue;
+                        }
+
+                        int start = x;
+                        runs.add(new int[] {pack(start, y, z), written});
+                        while (x < endX && sourceIds.get(row + x) != 0) {
+                            ids[written] = sourceIds.get(row + x);
+                            data[written] = sourceData.get(row + x);
+                            written++;
+                            x++;
+                        }
+                    }
+                }
+            }
+        }
+        cellStart[cellCount] = runs.size();
+
+        runPosition = new int[runs.size()];
+        runOffset = new int[runs.size() + 1];
+        for (int i = 0; i < runs.size(); i++) {
+            runPosition[i] = runs.get(i)[0];
+            runOffset[i] = runs.get(i)[1];
+        }
+        runOffset[runs.size()] = written;
+    }
+
+    /**
+     * Gets the width (X) of the original schematic
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height (Y) of the original schematic
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the length (Z) of the original schematic
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the number of non-air blocks in this plan
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return ids.length;
+    }
+
+    /**
+     * Gets the number of runs in this plan
+     *
+     * @return the number of runs
+     */
+    public int getRunCount() {
+        return runPosition.length;
+    }
+
+    /**
+     * Gets the approximate number of bytes used by this plan
+     *
+     * @return the approximate size in bytes
+     */
+    public long getMemoryUsage() {
+        return 64L + ids.length * 2L + runPosition.length * 8L + cellStart.length * 4L;
+    }
+
+    /**
+     * Determines if this plan has nothing to paste
+     *
+     * @return true if the schematic is only air, false otherwise
+     */
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public int getMinChunkX(int originX) {
+        return (originX + minX) >> 4;
+    }
+
+    public int getMaxChunkX(int originX) {
+        return (originX + minX + sizeX - 1) >> 4;
+    }
+
+    public int getMinChunkZ(int originZ) {
+        return (originZ + minZ) >> 4;
+    }
+
+    public int getMaxChunkZ(int originZ) {
+        return (originZ + minZ + sizeZ - 1) >> 4;
+    }
+
+    /**
+     * Pastes the part of this plan which lies within a chunk
+     *
+     * @param originX   the world X of the schematic's corner
+     * @param originY   the world Y of the schematic's corner
+     * @param originZ   the world Z of the schematic's corner
+     * @param chunkX    the chunk X coordinate
+     * @param chunkZ    the chunk Z coordinate
+     * @param maxHeight the world's maximum height, blocks at or above this are skipped
+     * @param sink      the receiver of the blocks, cannot be null
+     *
+     * @return the number of blocks pasted
+     */
+    public int paste(int originX, int originY, int originZ, int chunkX, int chunkZ, int maxHeight, BlockSink sink) {
+        if (isEmpty()) return 0;
+
+        // The chunk, relative to the trimmed box
+        int baseX = originX + minX, baseY = originY + minY, baseZ = originZ + minZ;
+        int lowX = (chunkX << 4) - baseX, highX = lowX + 15;
+        int lowZ = (chunkZ << 4) - baseZ, highZ = lowZ + 15;
+        if (highX < 0 || lowX >= sizeX || highZ < 0 || lowZ >= sizeZ) return 0;
+
+        int cellX0 = Math.max(lowX, 0) >> 4, cellX1 = Math.min(highX, sizeX - 1) >> 4;
+        int cellZ0 = Math.max(lowZ, 0) >> 4, cellZ1 = Math.min(highZ, sizeZ - 1) >> 4;
+        int pasted = 0;
+
+        for (int cy = 0; cy < cellsY; cy++) {
+            for (int cz = cellZ0; cz <= cellZ1; cz++) {
+                for (int cx = cellX0; cx <= cellX1; cx++) {
+                    int cell = (cy * cellsZ + cz) * cellsX + cx;
+
+                    for (int run = cellStart[cell]; run < cellStart[cell + 1]; run++) {
+                        int position = runPosition[run];
+                        int rx = unpackX(position), ry = unpackY(position), rz = unpackZ(position);
+                        if (rz < lowZ || rz > highZ) continue;
+
+                        int y = baseY + ry;
+                        if (y < 0 || y >= maxHeight) continue;
+
+                        int offset = runOffset[run];
+                        int runLength = runOffset[run + 1] - offset;
+                        int start = Math.max(rx, lowX), end = Math.min(rx + runLength - 1, highX);
+
+                        for (int x = start; x <= end; x++) {
+                            int i = offset + (x - rx);
+                            sink.setBlock(baseX + x, y, baseZ + rz, ids[i] & 0xFF, data[i]);
+                            pasted++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return pasted;
+    }
+
+    /**
+     * Compiles a schematic into a paste plan
+     *
+     * @param schematic the schematic to compile, cannot be null
+     *
+     * @return the paste plan
+     */
+    public static SchematicPastePlan compile(Schematic schematic) {
+        if (schematic == null) throw new IllegalArgumentException();
+        return new SchematicPastePlan(schematic);
+    }
+
+    private static int pack(int x, int y, int z) {
+        return (y << 20) | (z << 10) | x;
+    }
+
+    private static int unpackX(int packed) {
+        return packed & 0x3FF;
+    }
+
+    private static int unpackY(int packed) {
+        return (packed >>> 20) & 0x3FF;
+    }
+
+    private static int unpackZ(int packed) {
+        return (packed >>> 10) & 0x3FF;
+    }
+}
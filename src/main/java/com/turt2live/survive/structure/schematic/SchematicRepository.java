@@ -17,16 +17,45 @@
 
 package com.turt2live.survive.structure.schematic;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Represents the repository used for schematics
+ * Represents the repository used for schematics. Schematics may be registered
+ * from any thread while the repository is in use; until loading has finished
+ * (see {@link #isReady()}) only the schematics loaded so far can be chosen.
+ * <p/>
+ * Registered schematics are kept in a compact form: memory mapped schematics
+ * stay mapped, anything else is converted to a {@link com.turt2live.survive.structure.schematic.PackedSchematic}.
+ * Paste plans are compiled from them when first needed, one per
+ * {@link com.turt2live.survive.structure.schematic.SchematicTransform} used.
+ * If a memory budget is set (see {@link #setMemoryBudget(long)}) the plans of
+ * the least recently used schematics are evicted to keep the plans within it,
+ * and compiled again when next needed.
  *
  * @author turt2live
  */
 public final class SchematicRepository {
 
-    private static Map<Schematic, Double> SCHEMATICS = new HashMap<Schematic, Double>();
+    private static List<Entry> ENTRIES = new CopyOnWriteArrayList<Entry>();
+    private static Map<Schematic, Entry> BY_SCHEMATIC = new ConcurrentHashMap<Schematic, Entry>();
+
+    private static final AtomicLong CLOCK = new AtomicLong();
+    private static final AtomicLong PACKED = new AtomicLong(); // Never evicted
+    private static final AtomicLong PLANS = new AtomicLong();
+    private static final AtomicLong VARIANTS = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+    private static volatile long budget = 0;
+
+    private static final Object READY_LOCK = new Object();
+    private static int expected = 0;
+    private static int loaded = 0;
+    private static int failed = 0;
 
     /**
      * Gets a random schematic from the repository.
@@ -34,25 +63,55 @@ public final class SchematicRepository {
      * @param random the random to use, cannot be null
      * @return the schematic chosen, or null if none
      */
-    private static int i = 0;
-
     public static Schematic getRandomSchematic(Random random) {
+        Entry entry = getRandomEntry(random);
+        return entry == null ? null : entry.schematic;
+    }
+
+    private static Entry getRandomEntry(Random random) {
         double chosen = random.nextDouble();
-        List<Schematic> schematicList = new ArrayList<Schematic>();
+        List<Entry> entryList = new ArrayList<Entry>();
 
-        for (Map.Entry<Schematic, Double> entry : SCHEMATICS.entrySet()) {
-            if (chosen <= entry.getValue() || i < 0) schematicList.add(entry.getKey());
+        for (Entry entry : ENTRIES) {
+            if (chosen <= entry.chance) entryList.add(entry);
         }
 
-        i++;
-
-        if (schematicList.size() > 0) return schematicList.get(random.nextInt(schematicList.size()));
+        if (entryList.size() > 0) return entryList.get(random.nextInt(entryList.size()));
         return null;
     }
 
+    /**
+     * Gets the paste plan for a registered schematic, compiling it if it is not loaded
+     *
+     * @param schematic the schematic, as returned by {@link #getRandomSchematic(java.util.Random)}, cannot be null
+     *
+     * @return the paste plan, or null if the schematic is not registered
+     */
+    public static SchematicPastePlan getPastePlan(Schematic schematic) {
+        return getPastePlan(schematic, SchematicTransform.NONE);
+    }
+
+    /**
+     * Gets the paste plan for a transformed registered schematic, compiling it if it is
+     * not loaded. Each transform is compiled once and kept like any other plan.
+     *
+     * @param schematic the schematic, as returned by {@link #getRandomSchematic(java.util.Random)}, cannot be null
+     * @param transform the transform to apply, cannot be null
+     *
+     * @return the paste plan, or null if the schematic is not registered
+     */
+    public static SchematicPastePlan getPastePlan(Schematic schematic, SchematicTransform transform) {
+        if (transform == null) throw new IllegalArgumentException();
+
+        Entry entry = BY_SCHEMATIC.get(schematic);
+        return entry == null ? null : acquire(entry, transform);
+    }
+
     /**
      * Registers a schematic with the repository. This will not validate for overwriting
-     * nor will this care if the schematic being registered is already registered.
+     * nor will this care if the schematic being registered is already registered. The
+     * schematic is kept in a compact form rather than as given, and its
+     * {@link SchematicPastePlan} is compiled here so the first paste is quick.
      *
      * @param schematic the schematic to register, cannot be null
      * @param chance    the chance that this schematic can be loaded, must be between 0 and 1
@@ -60,6 +119,214 @@ public final class SchematicRepository {
     public static void register(Schematic schematic, double chance) {
         if (schematic == null || chance < 0 || chance > 1) throw new IllegalArgumentException();
 
-        SCHEMATICS.put(schematic, chance);
+        Schematic compact = schematic instanceof MappedSchematic ? schematic : PackedSchematic.pack(schematic);
+        Entry entry = new Entry(compact, chance);
+        acquire(entry, SchematicTransform.NONE);
+
+        BY_SCHEMATIC.put(compact, entry);
+        ENTRIES.add(entry);
+        if (compact instanceof PackedSchematic)
+            PACKED.addAndGet(((PackedSchematic) compact).getMemoryUsage());
+
+        synchronized (READY_LOCK) {
+            loaded++;
+            READY_LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Sets the memory budget for paste plans. When the plans in memory use more
+     * than this, the least recently used ones are evicted. The schematics
+     * themselves are never evicted and are not counted against the budget.
+     *
+     * @param bytes the budget, in bytes, or 0 for no limit
+     */
+    public static void setMemoryBudget(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException();
+
+        budget = bytes;
+        evict(null);
+    }
+
+    /**
+     * Gets the memory budget for paste plans
+     *
+     * @return the budget, in bytes, or 0 for no limit
+     */
+    public static long getMemoryBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the approximate memory used by the schematics and paste plans in memory
+     *
+     * @return the approximate size in bytes
+     */
+    public static long getMemoryUsage() {
+        return PACKED.get() + PLANS.get();
+    }
+
+    /**
+     * Gets the approximate memory used by the paste plans in memory, which is what
+     * the memory budget limits. This is included in {@link #getMemoryUsage()}.
+     *
+     * @return the approximate size in bytes
+     */
+    public static long getPlanMemoryUsage() {
+        return PLANS.get();
+    }
+
+    /**
+     * Gets the approximate memory used by the paste plans of transformed schematics
+     * in memory. This is included in {@link #getMemoryUsage()}.
+     *
+     * @return the approximate size in bytes
+     */
+    public static long getVariantMemoryUsage() {
+        return VARIANTS.get();
+    }
+
+    /**
+     * Gets the number of paste plans evicted so far to stay within the memory budget
+     *
+     * @return the number of evictions
+     */
+    public static long getEvictionCount() {
+        return EVICTIONS.get();
+    }
+
+    private static SchematicPastePlan acquire(Entry entry, SchematicTransform transform) {
+        SchematicPastePlan plan;
+        synchronized (entry) {
+            entry.lastUsed = CLOCK.incrementAndGet();
+            plan = entry.plans[transform.ordinal()];
+            if (plan != null) return plan;
+
+            plan = SchematicPastePlan.compile(transform == SchematicTransform.NONE ? entry.schematic : transform.apply(entry.schematic));
+            entry.plans[transform.ordinal()] = plan;
+            entry.memory += plan.getMemoryUsage();
+            PLANS.addAndGet(plan.getMemoryUsage());
+            if (transform != SchematicTransform.NONE) VARIANTS.addAndGet(plan.getMemoryUsage());
+        }
+
+        evict(entry); // Outside the entry's lock so two loading threads cannot deadlock
+        return plan;
+    }
+
+    private static void evict(Entry keep) {
+        long limit = budget;
+        while (limit > 0 && PLANS.get() > limit) {
+            Entry coldest = null;
+            for (Entry entry : ENTRIES) {
+                if (entry != keep && entry.memory > 0 && (coldest == null || entry.lastUsed < coldest.lastUsed))
+                    coldest = entry;
+            }
+            if (coldest == null) return; // Nothing left to evict
+
+            synchronized (coldest) {
+                if (coldest.memory == 0) continue;
+                for (int i = 0; i < coldest.plans.length; i++) {
+                    if (coldest.plans[i] != null && i != SchematicTransform.NONE.ordinal())
+                        VARIANTS.addAndGet(-coldest.plans[i].getMemoryUsage());
+                    coldest.plans[i] = null; // Pastes in progress keep their own reference
+                }
+                PLANS.addAndGet(-coldest.memory);
+                coldest.memory = 0;
+            }
+            EVICTIONS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Tells the repository how many more schematics are being loaded. The repository
+     * is not ready until each of them has been registered or reported as failed.
+     *
+     * @param count the number of schematics being loaded, cannot be negative
+     */
+    public static void expect(int count) {
+        if (count < 0) throw new IllegalArgumentException();
+
+        synchronized (READY_LOCK) {
+            expected += count;
+        }
+    }
+
+    /**
+     * Reports that a schematic which was expected could not be loaded
+     */
+    public static void reportFailure() {
+        synchronized (READY_LOCK) {
+            failed++;
+            READY_LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Determines if every expected schematic has been loaded or has failed
+     *
+     * @return true if loading has finished, false otherwise
+     */
+    public static boolean isReady() {
+        synchronized (READY_LOCK) {
+            return loaded + failed >= expected;
+        }
+    }
+
+    /**
+     * Gets the number of schematics registered so far
+     *
+     * @return the number of loaded schematics
+     */
+    public static int getLoadedCount() {
+        synchronized (READY_LOCK) {
+            return loaded;
+        }
+    }
+
+    /**
+     * Gets the number of expected schematics which failed to load
+     *
+     * @return the number of failed schematics
+     */
+    public static int getFailedCount() {
+        synchronized (READY_LOCK) {
+            return failed;
+        }
+    }
+
+    /**
+     * Waits for loading to finish
+     *
+     * @param timeoutMillis the longest time to wait, in milliseconds
+     *
+     * @return true if loading has finished, false if the time ran out first
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static boolean awaitReady(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (READY_LOCK) {
+            while (loaded + failed < expected) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                READY_LOCK.wait(left);
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Schematic schematic;
+        private final double chance;
+        private final SchematicPastePlan[] plans = new SchematicPastePlan[SchematicTransform.values().length]; // Guarded by this
+        private volatile long memory;
+        private volatile long lastUsed;
+
+        Entry(Schematic schematic, double chance) {
+            this.schematic = schematic;
+            this.chance = chance;
+        }
     }
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a schematic file as a stream of NBT tags rather than as a tag tree.
+ * Only Width, Height, Length, Blocks and Data are kept: their values are read
+ * straight into the final arrays, and every other tag (entities, tile entities,
+ * materials, ...) is skipped over without being built.
+ * <p/>
+ * Both gzipped and uncompressed files are accepted.
+ *
+ * @author turt2live
+ */
+public final class SchematicStreamReader {
+
+    static final int TAG_END = 0;
+    static final int TAG_BYTE = 1;
+    static final int TAG_SHORT = 2;
+    static final int TAG_INT = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_FLOAT = 5;
+    static final int TAG_DOUBLE = 6;
+    static final int TAG_BYTE_ARRAY = 7;
+    static final int TAG_STRING = 8;
+    static final int TAG_LIST = 9;
+    static final int TAG_COMPOUND = 10;
+    static final int TAG_INT_ARRAY = 11;
+
+    private static final int MAX_DEPTH = 512;
+
+    private final DataInputStream in;
+
+    private int width = -1, height = -1, length = -1;
+    private byte[] blocks, data;
+
+    /**
+     * Creates a new schematic stream reader. Nothing is read until {@link #read()} is called.
+     *
+     * @param stream the stream of the schematic file, cannot be null
+     *
+     * @throws IOException if the stream cannot be opened
+     */
+    public SchematicStreamReader(InputStream stream) throws IOException {
+        if (stream == null) throw new IllegalArgumentException();
+
+        BufferedInputStream buffered = new BufferedInputStream(stream);
+        buffered.mark(2);
+        int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+
+        this.in = new DataInputStream(magic == GZIPInputStream.GZIP_MAGIC ? new BufferedInputStream(new GZIPInputStream(buffered)) : buffered);
+    }
+
+    /**
+     * Reads the schematic and closes the stream
+     *
+     * @throws IOException if the stream cannot be read or is not a valid schematic
+     */
+    public void read() throws IOException {
+        try {
+            if (in.readUnsignedByte() != TAG_COMPOUND) throw new IOException("Schematic root is not a compound tag");
+            skipString();
+
+            int type;
+            while ((type = in.readUnsignedByte()) != TAG_END) {
+                String name = in.readUTF();
+
+                if (type == TAG_SHORT && name.equals("Width")) width = in.readUnsignedShort();
+                else if (type == TAG_SHORT && name.equals("Height")) height = in.readUnsignedShort();
+                else if (type == TAG_SHORT && name.equals("Length")) length = in.readUnsignedShort();
+                else if (type == TAG_BYTE_ARRAY && name.equals("Blocks")) blocks = readByteArray();
+                else if (type == TAG_BYTE_ARRAY && name.equals("Data")) data = readByteArray();
+                else skip(type, 0);
+            }
+        } finally {
+            in.close();
+        }
+
+        if (width < 0 || height < 0 || length < 0) throw new IOException("Schematic is missing its dimensions");
+        if (blocks == null || data == null) throw new IOException("Schematic is missing its blocks");
+
+        int volume = width * height * length;
+        if (blocks.length < volume || data.length < volume)
+            throw new IOException("Schematic has " + blocks.length + " blocks but should have " + volume);
+    }
+
+    private byte[] readByteArray() throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Negative array length");
+
+        byte[] array = new byte[size];
+        in.readFully(array);
+        return array;
+    }
+
+    private void skip(int type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) throw new IOException("Tags are nested too deeply");
+
+        switch (type) {
+            case TAG_BYTE:
+                skipBytes(1);
+                break;
+            case TAG_SHORT:
+                skipBytes(2);
+                break;
+            case TAG_INT:
+            case TAG_FLOAT:
+                skipBytes(4);
+                break;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                skipBytes(8);
+                break;
+            case TAG_BYTE_ARRAY:
+                skipBytes(in.readInt());
+                break;
+            case TAG_INT_ARRAY:
+                skipBytes(in.readInt() * 4L);
+                break;
+            case TAG_STRING:
+                skipString();
+                break;
+            case TAG_LIST:
+                int elementType = in.readUnsignedByte();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    skip(elementType, depth + 1);
+                }
+                break;
+            case TAG_COMPOUND:
+                int child;
+                while ((child = in.readUnsignedByte()) != TAG_END) {
+                    skipString();
+                    skip(child, depth + 1);
+                }
+                break;
+            default:
+                throw new IOException("Unknown tag type " + type);
+        }
+    }
+
+    private void skipString() throws IOException {
+        skipBytes(in.readUnsignedShort());
+    }
+
+    private void skipBytes(long count) throws IOException {
+        if (count < 0) throw new IOException("Negative length");
+
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Gets the width (X size) of the schematic
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height (Y size) of the schematic
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the length (Z size) of the schematic
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the block IDs of the schematic
+     *
+     * @return the block IDs
+     */
+    public byte[] getBlockIds() {
+        return blocks;
+    }
+
+    /**
+     * Gets the block data of the schematic
+     *
+     * @return the block data
+     */
+    public byte[] getBlockData() {
+        return data;
+    }
+}
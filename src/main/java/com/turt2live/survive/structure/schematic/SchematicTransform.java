@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents one of the eight ways a schematic can be turned and flipped about
+ * the Y axis: a number of clockwise quarter turns (looking down), optionally
+ * after mirroring along the X axis. Mirroring along Z is {@link #MIRROR_X_ROTATE_180}.
+ * <p/>
+ * Only block positions are transformed; block data which holds a direction
+ * (stairs, torches, ...) is kept as it is.
+ *
+ * @author turt2live
+ */
+public enum SchematicTransform {
+
+    NONE(false, 0),
+    ROTATE_90(false, 1),
+    ROTATE_180(false, 2),
+    ROTATE_270(false, 3),
+    MIRROR_X(true, 0),
+    MIRROR_X_ROTATE_90(true, 1),
+    MIRROR_X_ROTATE_180(true, 2),
+    MIRROR_X_ROTATE_270(true, 3);
+
+    private final boolean mirror;
+    private final int turns;
+
+    private SchematicTransform(boolean mirror, int turns) {
+        this.mirror = mirror;
+        this.turns = turns;
+    }
+
+    /**
+     * Determines if this transform mirrors along the X axis before turning
+     *
+     * @return true if mirrored, false otherwise
+     */
+    public boolean isMirrored() {
+        return mirror;
+    }
+
+    /**
+     * Gets the number of clockwise quarter turns of this transform
+     *
+     * @return the number of quarter turns, 0 to 3
+     */
+    public int getQuarterTurns() {
+        return turns;
+    }
+
+    /**
+     * Applies this transform to a schematic. The result holds its own block arrays.
+     *
+     * @param schematic the schematic to transform, cannot be null
+     *
+     * @return the transformed schematic
+     */
+    public Schematic apply(Schematic schematic) {
+        if (schematic == null) throw new IllegalArgumentException();
+
+        int w = schematic.getWidth(), h = schematic.getHeight(), l = schematic.getLength();
+        boolean swap = (turns & 1) == 1;
+        final int tw = swap ? l : w, tl = swap ? w : l;
+
+        ByteBuffer ids = MappedSchematic.blockIds(schematic);
+        ByteBuffer data = MappedSchematic.blockData(schematic);
+        final byte[] newIds = new byte[ids.capacity()];
+        final byte[] newData = new byte[data.capacity()];
+
+        for (int z = 0; z < l; z++) {
+            for (int x = 0; x < w; x++) {
+                int tx = mirror ? w - 1 - x : x, tz = z;
+                int cw = w, cl = l;
+                for (int i = 0; i < turns; i++) {
+                    int nx = cl - 1 - tz;
+                    tz = tx;
+                    tx = nx;
+
+                    int t = cw;
+                    cw = cl;
+                    cl = t;
+                }
+
+                for (int y = 0; y < h; y++) {
+                    int from = (y * l + z) * w + x;
+                    int to = (y * tl + tz) * tw + tx;
+                    newIds[to] = ids.get(from);
+                    newData[to] = data.get(from);
+                }
+            }
+        }
+
+        final int height = h;
+        return new Schematic() {
+            @Override
+            public byte[] getBlockData() {
+                return newData;
+            }
+
+            @Override
+            public byte[] getBlockIds() {
+                return newIds;
+            }
+
+            @Override
+            public int getWidth() {
+                return tw;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+
+            @Override
+            public int getLength() {
+                return tl;
+            }
+        };
+    }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import java.util.Arrays;
+
+/**
+ * Represents the heat sources in one chunk, by 16 block high section. A
+ * section with few sources keeps them as a list; once it has more than
+ * {@link #LIST_LIMIT} (such as a section of water) it keeps one byte per
+ * block instead, so both cases are cheap to query.
+ * <p/>
+ * All methods are synchronized so the index can be read off the main thread.
+ *
+ * @author turt2live
+ */
+final class ChunkHeatSources {
+
+    static final int LIST_LIMIT = 64;
+
+    private static final HeatSource[] SOURCES = HeatSource.values();
+    private static final byte NONE = -1;
+
+    private final int chunkX, chunkZ;
+    private final Section[] sections;
+    private int count = 0;
+
+    ChunkHeatSources(int chunkX, int chunkZ, int sectionCount) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.sections = new Section[sectionCount];
+    }
+
+    /**
+     * Sets the heat source at a block
+     *
+     * @param x      the X coordinate within the chunk, 0 to 15
+     * @param y      the Y coordinate
+     * @param z      the Z coordinate within the chunk, 0 to 15
+     * @param source the heat source, or null for none
+     */
+    synchronized void set(int x, int y, int z, HeatSource source) {
+        int sy = y >> 4;
+        if (sy < 0 || sy >= sections.length) return;
+
+        Section section = sections[sy];
+        if (section == null) {
+            if (source == null) return;
+            section = sections[sy] = new Section();
+        }
+
+        count -= section.size;
+        section.set(((y & 0xF) << 8) | (z << 4) | x, source == null ? NONE : (byte) source.ordinal());
+        count += section.size;
+        if (section.size == 0) sections[sy] = null;
+    }
+
+    /**
+     * Adds up the warmth and cold of the sources in a box, weighting each by its squared
+     * distance to a point as the temperature calculation does
+     *
+     * @param minX the lowest X coordinate of the box
+     * @param minY the lowest Y coordinate of the box
+     * @param minZ the lowest Z coordinate of the box
+     * @param maxX the highest X coordinate of the box
+     * @param maxY the highest Y coordinate of the box
+     * @param maxZ the highest Z coordinate of the box
+     * @param px   the X coordinate of the point
+     * @param py   the Y coordinate of the point
+     * @param pz   the Z coordinate of the point
+     * @param out  the totals to add to: warmth at 0, cold at 1
+     *
+     * @return the number of sources found
+     */
+    synchronized int accumulate(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, double px, double py, double pz, double[] out) {
+        int baseX = chunkX << 4, baseZ = chunkZ << 4;
+        int lx0 = Math.max(minX - baseX, 0), lx1 = Math.min(maxX - baseX, 15);
+        int lz0 = Math.max(minZ - baseZ, 0), lz1 = Math.min(maxZ - baseZ, 15);
+        if (lx0 > lx1 || lz0 > lz1) return 0;
+
+        int found = 0;
+        for (int sy = Math.max(minY >> 4, 0); sy <= Math.min(maxY >> 4, sections.length - 1); sy++) {
+            Section section = sections[sy];
+            if (section == null) continue;
+
+            int ly0 = Math.max(minY - (sy << 4), 0), ly1 = Math.min(maxY - (sy << 4), 15);
+
+            if (section.dense != null) {
+                for (int ly = ly0; ly <= ly1; ly++) {
+                    for (int lz = lz0; lz <= lz1; lz++) {
+                        for (int lx = lx0; lx <= lx1; lx++) {
+                            byte kind = section.dense[(ly << 8) | (lz << 4) | lx];
+                            if (kind == NONE) continue;
+                            add(SOURCES[kind], baseX + lx, (sy << 4) + ly, baseZ + lz, px, py, pz, out);
+                            found++;
+                        }
+                    }
+                }
+            } else {
+                for (int i = 0; i < section.size; i++) {
+                    int index = section.positions[i];
+                    int lx = index & 0xF, lz = (index >> 4) & 0xF, ly = index >> 8;
+                    if (lx < lx0 || lx > lx1 || lz < lz0 || lz > lz1 || ly < ly0 || ly > ly1) continue;
+                    add(SOURCES[section.kinds[i]], baseX + lx, (sy << 4) + ly, baseZ + lz, px, py, pz, out);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void add(HeatSource source, int x, int y, int z, double px, double py, double pz, double[] out) {
+        double dx = x - px, dy = y - py, dz = z - pz;
+        double distance = dx * dx + dy * dy + dz * dz;
+        out[0] += distance * source.getWarmth();
+        out[1] += distance * source.getCold();
+    }
+
+    /**
+     * Gets the number of heat sources in this chunk
+     *
+     * @return the number of sources
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    private static final class Section {
+
+        private short[] positions = new short[8]; // y << 8 | z << 4 | x
+        private byte[] kinds = new byte[8];
+        private byte[] dense;
+        private int size = 0;
+
+        void set(int index, byte kind) {
+            if (dense != null) {
+                if (dense[index] == NONE && kind != NONE) size++;
+                else if (dense[index] != NONE && kind == NONE) size--;
+                dense[index] = kind;
+                return;
+            }
+
+            for (int i = 0; i < size; i++) {
+                if (positions[i] != index) continue;
+
+                if (kind != NONE) {
+                    kinds[i] = kind;
+                } else {
+                    size--;
+                    positions[i] = positions[size];
+                    kinds[i] = kinds[size];
+                }
+                return;
+            }
+            if (kind == NONE) return;
+
+            if (size == LIST_LIMIT) {
+                dense = new byte[4096];
+                Arrays.fill(dense, NONE);
+                for (int i = 0; i < size; i++) {
+                    dense[positions[i]] = kinds[i];
+                }
+                dense[index] = kind;
+                positions = null;
+                kinds = null;
+                size++;
+                return;
+            }
+
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+            }
+            positions[size] = (short) index;
+            kinds[size] = kind;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.bukkit.Material;
+
+/**
+ * Represents the kinds of blocks which warm or cool a player standing near
+ * them. Each kind covers one or more block types, with the weights the
+ * temperature calculation has always used.
+ *
+ * @author turt2live
+ */
+public enum HeatSource {
+
+    LAVA(2, 0, Material.STATIONARY_LAVA, Material.LAVA),
+    FIRE(1, 0, Material.FIRE),
+    EMBER(0.5, 0, Material.BURNING_FURNACE, Material.TORCH),
+    PACKED_ICE(0, 2, Material.PACKED_ICE),
+    ICE(0, 1, Material.ICE),
+    WATER(0, 0.5, Material.STATIONARY_WATER, Material.WATER);
+
+    private static final HeatSource[] BY_ID = new HeatSource[4096];
+
+    static {
+        for (HeatSource source : values()) {
+            for (Material material : source.materials) {
+                BY_ID[material.getId()] = source;
+            }
+        }
+    }
+
+    private final double warmth, cold;
+    private final Material[] materials;
+
+    private HeatSource(double warmth, double cold, Material... materials) {
+        this.warmth = warmth;
+        this.cold = cold;
+        this.materials = materials;
+    }
+
+    /**
+     * Gets how much this source warms, per squared block of distance
+     *
+     * @return the warmth weight
+     */
+    public double getWarmth() {
+        return warmth;
+    }
+
+    /**
+     * Gets how much this source cools, per squared block of distance
+     *
+     * @return the cold weight
+     */
+    public double getCold() {
+        return cold;
+    }
+
+    /**
+     * Gets the heat source a block type is
+     *
+     * @param typeId the block ID
+     *
+     * @return the heat source, or null if the block is neither warm nor cold
+     */
+    public static HeatSource fromId(int typeId) {
+        return typeId < 0 || typeId >= BY_ID.length ? null : BY_ID[typeId];
+    }
+}
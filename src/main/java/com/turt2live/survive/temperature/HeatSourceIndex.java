@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import com.turt2live.survive.world.ChunkChangedEvent;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockIgniteEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.inventory.FurnaceBurnEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkPopulateEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Represents an index of the {@link com.turt2live.survive.temperature.HeatSource}s
+ * in every loaded chunk, so a player's surroundings can be summed up from the
+ * few sources near them rather than by looking at every block.
+ * <p/>
+ * Chunks are scanned from a snapshot off the main thread when they load and
+ * dropped when they unload. They are scanned again once populated and whenever
+ * a {@link com.turt2live.survive.world.BlockChangeBatch} finishes with them, as
+ * neither fires block events. Block events mark the blocks they change, and the
+ * marked blocks are looked at again on the next tick. Queries may be made from
+ * any thread.
+ *
+ * @author turt2live
+ */
+public final class HeatSourceIndex implements Listener, Runnable {
+
+    private final Plugin plugin;
+    private final ConcurrentMap<UUID, ConcurrentMap<Long, ChunkHeatSources>> worlds = new ConcurrentHashMap<UUID, ConcurrentMap<Long, ChunkHeatSources>>();
+
+    // Main thread only
+    private final Map<UUID, Set<Long>> dirty = new HashMap<UUID, Set<Long>>();
+    private final Map<UUID, Map<Long, List<Long>>> scanning = new HashMap<UUID, Map<Long, List<Long>>>();
+
+    /**
+     * Creates and starts a new heat source index. Chunks which are already loaded are
+     * scanned right away.
+     *
+     * @param plugin the plugin to run the index for, cannot be null
+     */
+    public HeatSourceIndex(Plugin plugin) {
+        if (plugin == null) throw new IllegalArgumentException();
+
+        this.plugin = plugin;
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, this, 1, 1);
+
+        for (World world : plugin.getServer().getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                scan(chunk);
+            }
+        }
+    }
+
+    /**
+     * Adds up the warmth and cold of the sources around a point. The box searched runs
+     * from radius blocks below the point's block to radius - 1 blocks above it on each
+     * axis, and each source is weighted by its squared distance to the point.
+     *
+     * @param world  the UID of the world, cannot be null
+     * @param x      the X coordinate of the point
+     * @param y      the Y coordinate of the point
+     * @param z      the Z coordinate of the point
+     * @param radius the search radius, must be > 0
+     * @param out    the totals to add to: warmth at 0, cold at 1. Cannot be null.
+     *
+     * @return the number of sources found
+     */
+    public int accumulate(UUID world, double x, double y, double z, int radius, double[] out) {
+        if (world == null || radius <= 0 || out == null || out.length < 2) throw new IllegalArgumentException();
+
+        ConcurrentMap<Long, ChunkHeatSources> chunks = worlds.get(world);
+        if (chunks == null) return 0;
+
+        int bx = floor(x), by = floor(y), bz = floor(z);
+        int minX = bx - radius, minY = by - radius, minZ = bz - radius;
+        int maxX = bx + radius - 1, maxY = by + radius - 1, maxZ = bz + radius - 1;
+
+        int found = 0;
+        for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                ChunkHeatSources sources = chunks.get(key(cx, cz));
+                if (sources != null)
+                    found += sources.accumulate(minX, minY, minZ, maxX, maxY, maxZ, x, y, z, out);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of chunks indexed
+     *
+     * @return the number of chunks
+     */
+    public int getIndexedChunks() {
+        int count = 0;
+        for (ConcurrentMap<Long, ChunkHeatSources> chunks : worlds.values()) {
+            count += chunks.size();
+        }
+        return count;
+    }
+
+    /**
+     * Looks at the blocks marked by events since the last tick
+     */
+    @Override
+    public void run() {
+        if (dirty.isEmpty()) return;
+
+        for (Map.Entry<UUID, Set<Long>> entry : dirty.entrySet()) {
+            World world = plugin.getServer().getWorld(entry.getKey());
+            ConcurrentMap<Long, ChunkHeatSources> chunks = worlds.get(entry.getKey());
+            Map<Long, List<Long>> pending = scanning.get(entry.getKey());
+            if (world == null || chunks == null) continue;
+
+            for (long position : entry.getValue()) {
+                int x = unpackX(position), y = unpackY(position), z = unpackZ(position);
+                long chunkKey = key(x >> 4, z >> 4);
+
+                List<Long> waiting = pending == null ? null : pending.get(chunkKey);
+                if (waiting != null) {
+                    waiting.add(position); // Looked at once the scan is in
+                    continue;
+                }
+
+                ChunkHeatSources sources = chunks.get(chunkKey);
+                if (sources != null) update(world, sources, x, y, z);
+            }
+        }
+        dirty.clear();
+    }
+
+    private void update(World world, ChunkHeatSources sources, int x, int y, int z) {
+        sources.set(x & 0xF, y, z & 0xF, HeatSource.fromId(world.getBlockTypeIdAt(x, y, z)));
+    }
+
+    private void scan(Chunk chunk) {
+        final World world = chunk.getWorld();
+        final UUID uid = world.getUID();
+        final int chunkX = chunk.getX(), chunkZ = chunk.getZ();
+        final long chunkKey = key(chunkX, chunkZ);
+        final int maxHeight = world.getMaxHeight();
+        final ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, false, false);
+
+        Map<Long, List<Long>> pending = scanning.get(uid);
+        if (pending == null) {
+            pending = new HashMap<Long, List<Long>>();
+            scanning.put(uid, pending);
+        }
+        final List<Long> waiting = new ArrayList<Long>();
+        pending.put(chunkKey, waiting);
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                final ChunkHeatSources sources = new ChunkHeatSources(chunkX, chunkZ, (maxHeight + 15) >> 4);
+                for (int sy = 0; sy < (maxHeight + 15) >> 4; sy++) {
+                    if (snapshot.isSectionEmpty(sy)) continue;
+
+                    for (int y = sy << 4; y < Math.min((sy + 1) << 4, maxHeight); y++) {
+                        for (int z = 0; z < 16; z++) {
+                            for (int x = 0; x < 16; x++) {
+                                HeatSource source = HeatSource.fromId(snapshot.getBlockTypeId(x, y, z));
+                                if (source != null) sources.set(x, y, z, source);
+                            }
+                        }
+                    }
+                }
+
+                plugin.getServer().getScheduler().runTask(plugin, new Runnable() {
+                    @Override
+                    public void run() {
+                        install(world, uid, chunkKey, sources, waiting);
+                    }
+                });
+            }
+        });
+    }
+
+    private void install(World world, UUID uid, long chunkKey, ChunkHeatSources sources, List<Long> waiting) {
+        Map<Long, List<Long>> pending = scanning.get(uid);
+        if (pending == null || pending.get(chunkKey) != waiting) return; // Unloaded, or scanned again since
+        pending.remove(chunkKey);
+
+        ConcurrentMap<Long, ChunkHeatSources> chunks = worlds.get(uid);
+        if (chunks == null) {
+            chunks = new ConcurrentHashMap<Long, ChunkHeatSources>();
+            worlds.put(uid, chunks);
+        }
+
+        // Catch up on changes made while the snapshot was being scanned
+        for (long position : waiting) {
+            update(world, sources, unpackX(position), unpackY(position), unpackZ(position));
+        }
+        chunks.put(chunkKey, sources);
+    }
+
+    private void mark(Block block) {
+        if (block == null) return;
+
+        mark(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    private void mark(World world, int x, int y, int z) {
+        if (y < 0 || y >= world.getMaxHeight()) return;
+
+        UUID uid = world.getUID();
+        Set<Long> positions = dirty.get(uid);
+        if (positions == null) {
+            positions = new HashSet<Long>();
+            dirty.put(uid, positions);
+        }
+        positions.add(pack(x, y, z));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        scan(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkPopulate(ChunkPopulateEvent event) {
+        scan(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkChanged(ChunkChangedEvent event) {
+        scan(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        UUID uid = event.getWorld().getUID();
+        long chunkKey = key(event.getChunk().getX(), event.getChunk().getZ());
+
+        ConcurrentMap<Long, ChunkHeatSources> chunks = worlds.get(uid);
+        if (chunks != null) chunks.remove(chunkKey);
+
+        Map<Long, List<Long>> pending = scanning.get(uid);
+        if (pending != null) pending.remove(chunkKey);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        UUID uid = event.getWorld().getUID();
+        worlds.remove(uid);
+        scanning.remove(uid);
+        dirty.remove(uid);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockSpread(BlockSpreadEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockIgnite(BlockIgniteEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        mark(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onFurnaceBurn(FurnaceBurnEvent event) {
+        mark(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPhysics(BlockPhysicsEvent event) {
+        // Physics runs constantly, only changes to something warm or cold are followed. A source
+        // turning into air is not, that is left to the other block events.
+        int changed = event.getChangedTypeId();
+        if (HeatSource.fromId(changed) == null && changed != Material.FURNACE.getId()) return;
+
+        // The event is for a neighbour of the block which changed, and does not say which one
+        Block block = event.getBlock();
+        World world = block.getWorld();
+        int x = block.getX(), y = block.getY(), z = block.getZ();
+        mark(world, x - 1, y, z);
+        mark(world, x + 1, y, z);
+        mark(world, x, y - 1, z);
+        mark(world, x, y + 1, z);
+        mark(world, x, y, z - 1);
+        mark(world, x, y, z + 1);
+    }
+
+    private static int floor(double value) {
+        int floor = (int) value;
+        return value < floor ? floor - 1 : floor;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    private static int unpackX(long position) {
+        return (int) (position >> 38);
+    }
+
+    private static int unpackY(long position) {
+        return (int) (position & 0xFFF);
+    }
+
+    private static int unpackZ(long position) {
+        return (int) (position << 26 >> 38);
+    }
+}
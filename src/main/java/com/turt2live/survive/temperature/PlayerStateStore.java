@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Represents the store of {@link com.turt2live.survive.temperature.PlayerSurvivalState}s
+ * for online players. States are kept in dense slots, reusing the slots of
+ * released states, so the store stays as small as the number of players online
+ * at once. This class is not thread safe.
+ *
+ * @author turt2live
+ */
+public final class PlayerStateStore {
+
+    private PlayerSurvivalState[] slots = new PlayerSurvivalState[16];
+    private int[] free = new int[16];
+    private int freeCount = 0;
+    private int used = 0;
+    private final Map<UUID, PlayerSurvivalState> byPlayer = new HashMap<UUID, PlayerSurvivalState>();
+
+    /**
+     * Creates the state for a player. If the player already has a state, that state
+     * is returned instead.
+     *
+     * @param player the UID of the player, cannot be null
+     *
+     * @return the player's state
+     */
+    public PlayerSurvivalState create(UUID player) {
+        if (player == null) throw new IllegalArgumentException();
+
+        PlayerSurvivalState state = byPlayer.get(player);
+        if (state != null) return state;
+
+        int slot;
+        if (freeCount > 0) slot = free[--freeCount];
+        else {
+            if (used == slots.length) slots = Arrays.copyOf(slots, used * 2);
+            slot = used++;
+        }
+
+        state = new PlayerSurvivalState(slot, player);
+        slots[slot] = state;
+        byPlayer.put(player, state);
+        return state;
+    }
+
+    /**
+     * Releases the state of a player, freeing its slot
+     *
+     * @param player the UID of the player, cannot be null
+     *
+     * @return the released state, or null if the player had none
+     */
+    public PlayerSurvivalState release(UUID player) {
+        if (player == null) throw new IllegalArgumentException();
+
+        PlayerSurvivalState state = byPlayer.remove(player);
+        if (state == null) return null;
+
+        slots[state.getSlot()] = null;
+        if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = state.getSlot();
+        return state;
+    }
+
+    /**
+     * Gets the state of a player
+     *
+     * @param player the UID of the player
+     *
+     * @return the player's state, or null if the player has none
+     */
+    public PlayerSurvivalState get(UUID player) {
+        return byPlayer.get(player);
+    }
+
+    /**
+     * Gets the state in a slot
+     *
+     * @param slot the slot, 0 to {@link #getCapacity()} - 1
+     *
+     * @return the state, or null if the slot is free
+     */
+    public PlayerSurvivalState get(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Gets the number of slots in use or free for reuse. Every state's slot is lower than this.
+     *
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return used;
+    }
+
+    /**
+     * Gets the number of states in the store
+     *
+     * @return the number of states
+     */
+    public int size() {
+        return byPlayer.size();
+    }
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import java.util.UUID;
+
+/**
+ * Represents what the game keeps track of for one online player between
+ * temperature checks. States are created and released by a
+ * {@link com.turt2live.survive.temperature.PlayerStateStore} and should only be
+ * used from the main thread.
+ * <p/>
+ * Changes to values shown to the player are tracked with dirty flags so they
+ * are only sent to the player when they change.
+ *
+ * @author turt2live
+ */
+public final class PlayerSurvivalState {
+
+    /**
+     * Set when the body temperature has changed since it was last shown
+     */
+    public static final int DIRTY_TEMPERATURE = 1;
+
+    /**
+     * Set when the world temperature has changed since it was last shown
+     */
+    public static final int DIRTY_WORLD_TEMPERATURE = 1 << 1;
+
+    /**
+     * The walk speed modifier applied while a player is sweating
+     */
+    public static final float SLOW_MODIFIER = 0.5f;
+
+    /**
+     * The smallest movement, in blocks, counted by {@link #track(java.util.UUID, double, double, double)}
+     */
+    public static final double MIN_MOVEMENT = 0.001;
+
+    /**
+     * The largest movement, in blocks, counted by {@link #track(java.util.UUID, double, double, double)}.
+     * Anything further is taken to be a teleport.
+     */
+    public static final double MAX_MOVEMENT = 10;
+
+    private final int slot;
+    private final UUID player;
+    private double distance = 0;
+    private UUID lastWorld;
+    private double lastX, lastY, lastZ;
+    private int temperature = 1;
+    private int worldTemperature = 1;
+    private float walkSpeedModifier = 1;
+    private int dirty = 0;
+
+    PlayerSurvivalState(int slot, UUID player) {
+        this.slot = slot;
+        this.player = player;
+    }
+
+    /**
+     * Gets the slot this state is stored in. Slots are reused once a state is released.
+     *
+     * @return the slot
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Gets the UID of the player this state is for
+     *
+     * @return the player UID
+     */
+    public UUID getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the distance the player has moved since it was last taken
+     *
+     * @return the distance, in blocks
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Adds to the distance the player has moved
+     *
+     * @param distance the distance to add, in blocks
+     */
+    public void addDistance(double distance) {
+        this.distance += distance;
+    }
+
+    /**
+     * Tracks the player's movement from their position, which should be given once a
+     * tick. The straight line between this position and the last one is added to the
+     * distance moved.
+     * <p/>
+     * Clients report their position at most once a tick, so this normally counts the
+     * same distance as adding up every move the player makes. It can only count less:
+     * it misses movements shorter than {@link #MIN_MOVEMENT} (at most 0.02 blocks a
+     * second), movements longer than {@link #MAX_MOVEMENT} and moves between worlds,
+     * which are teleports, and any detour taken within a single tick.
+     *
+     * @param world the UID of the player's world, cannot be null
+     * @param x     the X coordinate of the player
+     * @param y     the Y coordinate of the player
+     * @param z     the Z coordinate of the player
+     *
+     * @return the distance added, in blocks
+     */
+    public double track(UUID world, double x, double y, double z) {
+        if (world == null) throw new IllegalArgumentException();
+
+        double dx = x - lastX, dy = y - lastY, dz = z - lastZ;
+        boolean sameWorld = world.equals(lastWorld);
+        lastWorld = world;
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+        if (!sameWorld) return 0;
+
+        // Most players stand still most of the time, so only take the root of real movement
+        double squared = dx * dx + dy * dy + dz * dz;
+        if (squared < MIN_MOVEMENT * MIN_MOVEMENT || squared > MAX_MOVEMENT * MAX_MOVEMENT) return 0;
+
+        double moved = Math.sqrt(squared);
+        distance += moved;
+        return moved;
+    }
+
+    /**
+     * Gets and resets the distance the player has moved
+     *
+     * @return the distance moved since it was last taken, in blocks
+     */
+    public double takeDistance() {
+        double taken = distance;
+        distance = 0;
+        return taken;
+    }
+
+    /**
+     * Gets the player's body temperature
+     *
+     * @return the temperature
+     */
+    public int getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * Sets the player's body temperature
+     *
+     * @param temperature the new temperature
+     */
+    public void setTemperature(int temperature) {
+        if (this.temperature != temperature) dirty |= DIRTY_TEMPERATURE;
+        this.temperature = temperature;
+    }
+
+    /**
+     * Gets the temperature of the player's world, as last shown to them
+     *
+     * @return the world temperature
+     */
+    public int getWorldTemperature() {
+        return worldTemperature;
+    }
+
+    /**
+     * Sets the temperature of the player's world
+     *
+     * @param worldTemperature the new world temperature
+     */
+    public void setWorldTemperature(int worldTemperature) {
+        if (this.worldTemperature != worldTemperature) dirty |= DIRTY_WORLD_TEMPERATURE;
+        this.worldTemperature = worldTemperature;
+    }
+
+    /**
+     * Gets the modifier applied to the player's walk speed by the game
+     *
+     * @return the modifier, 1 when none is applied
+     */
+    public float getWalkSpeedModifier() {
+        return walkSpeedModifier;
+    }
+
+    /**
+     * Sets the modifier applied to the player's walk speed by the game. This only
+     * records the modifier, it does not change the player's walk speed.
+     *
+     * @param walkSpeedModifier the modifier, must be > 0
+     */
+    public void setWalkSpeedModifier(float walkSpeedModifier) {
+        if (walkSpeedModifier <= 0) throw new IllegalArgumentException();
+
+        this.walkSpeedModifier = walkSpeedModifier;
+    }
+
+    /**
+     * Determines if the player is slowed by the game
+     *
+     * @return true if slowed, false otherwise
+     */
+    public boolean isSlow() {
+        return walkSpeedModifier != 1;
+    }
+
+    /**
+     * Determines if any of the given dirty flags are set
+     *
+     * @param flags the flags to check, such as {@link #DIRTY_TEMPERATURE}
+     *
+     * @return true if any are set, false otherwise
+     */
+    public boolean isDirty(int flags) {
+        return (dirty & flags) != 0;
+    }
+
+    /**
+     * Clears the given dirty flags
+     *
+     * @param flags the flags to clear, such as {@link #DIRTY_TEMPERATURE}
+     */
+    public void clean(int flags) {
+        dirty &= ~flags;
+    }
+}
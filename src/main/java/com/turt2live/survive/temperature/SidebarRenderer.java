@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.Objective;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents the sidebar scores shown to players. Every score change is a
+ * packet, so scores are not set directly: updates are remembered and sent
+ * together when the renderer is flushed, once a tick. An update is only sent
+ * when:
+ * <ul>
+ * <li>the value differs from the value last sent, and</li>
+ * <li>it has moved at least the entry's minimum change from it, or crossed one
+ * of the entry's thresholds.</li>
+ * </ul>
+ * Several updates to the same score before a flush are sent as one, and a
+ * flush sends no more than a set number of scores. The rest wait for the next
+ * flush.
+ * <p/>
+ * Players are referred to by their {@link com.turt2live.survive.temperature.PlayerSurvivalState}
+ * slot. This class is not thread safe.
+ *
+ * @author turt2live
+ */
+public final class SidebarRenderer {
+
+    private final int maxPerFlush;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Integer> minChanges = new ArrayList<Integer>();
+    private final List<int[]> thresholds = new ArrayList<int[]>();
+
+    private Player[] players = new Player[16];
+    private int[] sent = new int[0], pending = new int[0]; // By slot * entries + entry
+    private boolean[] queued = new boolean[0];
+    private int[] queue = new int[16];
+    private int head = 0, queueSize = 0;
+
+    private long sentCount, unchangedCount, skippedCount, coalescedCount;
+
+    /**
+     * Creates a new sidebar renderer
+     *
+     * @param maxPerFlush the most scores to send per flush, must be > 0
+     */
+    public SidebarRenderer(int maxPerFlush) {
+        if (maxPerFlush <= 0) throw new IllegalArgumentException();
+
+        this.maxPerFlush = maxPerFlush;
+    }
+
+    /**
+     * Adds an entry to the sidebar. Entries must all be added before any player is attached.
+     *
+     * @param name       the name of the score, cannot be null
+     * @param minChange  the smallest change from the value last sent which is sent, must be > 0
+     * @param thresholds values which are always sent when crossed, from lowest to highest
+     *
+     * @return the entry's index
+     */
+    public int addEntry(String name, int minChange, int... thresholds) {
+        if (name == null || minChange <= 0) throw new IllegalArgumentException();
+        if (sent.length > 0) throw new IllegalStateException("Players are already attached");
+
+        names.add(name);
+        minChanges.add(minChange);
+        this.thresholds.add(thresholds.clone());
+        return names.size() - 1;
+    }
+
+    /**
+     * Attaches a player to a slot. Every score of the player's sidebar should already
+     * be set to the initial value.
+     *
+     * @param slot    the player's state slot, cannot be negative
+     * @param player  the player, cannot be null
+     * @param initial the value each score currently shows
+     */
+    public void attach(int slot, Player player, int initial) {
+        if (slot < 0 || player == null) throw new IllegalArgumentException();
+
+        ensureSlot(slot);
+        players[slot] = player;
+        reset(slot, initial);
+    }
+
+    /**
+     * Detaches the player in a slot, dropping any updates waiting for them
+     *
+     * @param slot the player's state slot
+     */
+    public void detach(int slot) {
+        if (slot < 0 || slot >= players.length) return;
+
+        players[slot] = null;
+        if (slot * names.size() < sent.length) reset(slot, 0);
+    }
+
+    /**
+     * Updates a score. The update is sent on a later flush if it needs to be.
+     *
+     * @param slot  the player's state slot, cannot be negative
+     * @param entry the entry's index, as returned by {@link #addEntry(String, int, int...)}
+     * @param value the new value
+     *
+     * @return true if the update will be sent, false if it was dropped
+     */
+    public boolean update(int slot, int entry, int value) {
+        if (slot < 0 || entry < 0 || entry >= names.size()) throw new IllegalArgumentException();
+
+        ensureSlot(slot);
+        int index = slot * names.size() + entry;
+        int last = sent[index];
+
+        if (value == last) {
+            // Back to what is shown, anything still waiting is no longer needed
+            if (queued[index]) {
+                queued[index] = false;
+                coalescedCount++;
+            }
+            unchangedCount++;
+            return false;
+        }
+        if (Math.abs(value - last) < minChanges.get(entry) && band(entry, value) == band(entry, last)) {
+            // Close enough to what is shown, anything still waiting is no longer needed
+            if (queued[index]) {
+                queued[index] = false;
+                coalescedCount++;
+            }
+            skippedCount++;
+            return false;
+        }
+
+        pending[index] = value;
+        if (queued[index]) coalescedCount++;
+        else {
+            queued[index] = true;
+            enqueue(index);
+        }
+        return true;
+    }
+
+    /**
+     * Sends waiting updates, up to the renderer's limit. This should be called once a tick.
+     *
+     * @return the number of updates handled, including any for players no longer attached
+     */
+    public int flush() {
+        int count = names.size();
+        int flushed = 0;
+        while (queueSize > 0 && flushed < maxPerFlush) {
+            int index = queue[head];
+            head = (head + 1) % queue.length;
+            queueSize--;
+            if (!queued[index]) continue; // Dropped or already sent
+
+            queued[index] = false;
+            sent[index] = pending[index];
+            flushed++;
+
+            Player player = players[index / count];
+            Objective objective = player == null ? null : player.getScoreboard().getObjective(DisplaySlot.SIDEBAR);
+            if (objective == null) continue;
+
+            objective.getScore(names.get(index % count)).setScore(pending[index]);
+            sentCount++;
+        }
+        return flushed;
+    }
+
+    /**
+     * Gets the number of updates waiting to be sent
+     *
+     * @return the number of waiting updates
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (boolean waiting : queued) {
+            if (waiting) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of scores sent
+     *
+     * @return the number of scores sent
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Gets the number of score packets saved: updates which matched the value shown,
+     * updates too small to show, and updates replaced before they were sent
+     *
+     * @return the number of packets saved
+     */
+    public long getSavedCount() {
+        return unchangedCount + skippedCount + coalescedCount;
+    }
+
+    /**
+     * Describes the packets sent and saved, for logging
+     *
+     * @return the description
+     */
+    public String describe() {
+        return sentCount + " sent, " + getSavedCount() + " saved (" + unchangedCount + " unchanged, "
+                + skippedCount + " below minimum change, " + coalescedCount + " coalesced)";
+    }
+
+    private int band(int entry, int value) {
+        int[] bounds = thresholds.get(entry);
+        int band = 0;
+        while (band < bounds.length && value > bounds[band]) band++;
+        return band;
+    }
+
+    private void reset(int slot, int value) {
+        int count = names.size();
+        for (int i = slot * count; i < (slot + 1) * count; i++) {
+            sent[i] = value;
+            queued[i] = false; // Left in the queue, skipped when reached
+        }
+    }
+
+    private void ensureSlot(int slot) {
+        if (slot >= players.length) players = Arrays.copyOf(players, Math.max(players.length * 2, slot + 1));
+
+        int needed = (slot + 1) * names.size();
+        if (needed > sent.length) {
+            int size = Math.max(sent.length * 2, needed);
+            sent = Arrays.copyOf(sent, size);
+            pending = Arrays.copyOf(pending, size);
+            queued = Arrays.copyOf(queued, size);
+        }
+    }
+
+    private void enqueue(int index) {
+        if (queueSize == queue.length) {
+            int[] grown = new int[queue.length * 2];
+            for (int i = 0; i < queueSize; i++) {
+                grown[i] = queue[(head + i) % queue.length];
+            }
+            queue = grown;
+            head = 0;
+        }
+        queue[(head + queueSize) % queue.length] = index;
+        queueSize++;
+    }
+}
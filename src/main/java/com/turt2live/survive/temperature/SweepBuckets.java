@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Represents players spread over a number of buckets, so that a task which
+ * visits every player once per period can visit one bucket per tick instead
+ * of everyone on the same tick. Buckets are kept within one player of each
+ * other in size as players are added and removed.
+ * <p/>
+ * The time spent on each bucket can be recorded to check that the load is
+ * flat. This class is not thread safe.
+ *
+ * @author turt2live
+ */
+public final class SweepBuckets {
+
+    private final List<List<UUID>> buckets;
+    private final Map<UUID, Integer> bucketOf = new HashMap<UUID, Integer>();
+    private final long[] totalNanos, maxNanos;
+    private final int[] runs;
+
+    /**
+     * Creates a new set of sweep buckets
+     *
+     * @param count the number of buckets, must be > 0
+     */
+    public SweepBuckets(int count) {
+        if (count <= 0) throw new IllegalArgumentException();
+
+        buckets = new ArrayList<List<UUID>>(count);
+        for (int i = 0; i < count; i++) {
+            buckets.add(new ArrayList<UUID>());
+        }
+        totalNanos = new long[count];
+        maxNanos = new long[count];
+        runs = new int[count];
+    }
+
+    /**
+     * Adds a player to the smallest bucket. Adding a player twice does nothing.
+     *
+     * @param player the UID of the player, cannot be null
+     *
+     * @return the bucket the player is in
+     */
+    public int add(UUID player) {
+        if (player == null) throw new IllegalArgumentException();
+
+        Integer current = bucketOf.get(player);
+        if (current != null) return current;
+
+        int smallest = smallest();
+        buckets.get(smallest).add(player);
+        bucketOf.put(player, smallest);
+        return smallest;
+    }
+
+    /**
+     * Removes a player, moving another player over if the buckets are no longer even
+     *
+     * @param player the UID of the player, cannot be null
+     *
+     * @return true if the player was in a bucket, false otherwise
+     */
+    public boolean remove(UUID player) {
+        if (player == null) throw new IllegalArgumentException();
+
+        Integer bucket = bucketOf.remove(player);
+        if (bucket == null) return false;
+        buckets.get(bucket).remove(player);
+
+        int largest = largest(), smallest = smallest();
+        if (buckets.get(largest).size() - buckets.get(smallest).size() > 1) {
+            List<UUID> from = buckets.get(largest);
+            UUID moved = from.remove(from.size() - 1);
+            buckets.get(smallest).add(moved);
+            bucketOf.put(moved, smallest);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the players in a bucket
+     *
+     * @param bucket the bucket, 0 to {@link #getBucketCount()} - 1
+     *
+     * @return a copy of the players in the bucket
+     */
+    public List<UUID> getPlayers(int bucket) {
+        return new ArrayList<UUID>(buckets.get(bucket));
+    }
+
+    /**
+     * Gets the number of players in a bucket
+     *
+     * @param bucket the bucket, 0 to {@link #getBucketCount()} - 1
+     *
+     * @return the number of players
+     */
+    public int getPlayerCount(int bucket) {
+        return buckets.get(bucket).size();
+    }
+
+    /**
+     * Gets the number of buckets
+     *
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Records time spent on a bucket
+     *
+     * @param bucket the bucket, 0 to {@link #getBucketCount()} - 1
+     * @param nanos  the time spent, in nanoseconds
+     */
+    public void record(int bucket, long nanos) {
+        totalNanos[bucket] += nanos;
+        maxNanos[bucket] = Math.max(maxNanos[bucket], nanos);
+        runs[bucket]++;
+    }
+
+    /**
+     * Gets the average time recorded for a bucket since the timings were last reset
+     *
+     * @param bucket the bucket, 0 to {@link #getBucketCount()} - 1
+     *
+     * @return the average time, in nanoseconds, or 0 if none was recorded
+     */
+    public long getAverageNanos(int bucket) {
+        return runs[bucket] == 0 ? 0 : totalNanos[bucket] / runs[bucket];
+    }
+
+    /**
+     * Gets the longest time recorded for a bucket since the timings were last reset
+     *
+     * @param bucket the bucket, 0 to {@link #getBucketCount()} - 1
+     *
+     * @return the longest time, in nanoseconds
+     */
+    public long getMaxNanos(int bucket) {
+        return maxNanos[bucket];
+    }
+
+    /**
+     * Resets the recorded timings
+     */
+    public void resetTimings() {
+        for (int i = 0; i < runs.length; i++) {
+            totalNanos[i] = 0;
+            maxNanos[i] = 0;
+            runs[i] = 0;
+        }
+    }
+
+    /**
+     * Describes the size and recorded timings of each bucket, for logging
+     *
+     * @return the description
+     */
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < buckets.size(); i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(i).append(": ").append(buckets.get(i).size()).append(" players ")
+                    .append(getAverageNanos(i) / 1000).append("/").append(maxNanos[i] / 1000).append("us");
+        }
+        return builder.toString();
+    }
+
+    private int smallest() {
+        int smallest = 0;
+        for (int i = 1; i < buckets.size(); i++) {
+            if (buckets.get(i).size() < buckets.get(smallest).size()) smallest = i;
+        }
+        return smallest;
+    }
+
+    private int largest() {
+        int largest = 0;
+        for (int i = 1; i < buckets.size(); i++) {
+            if (buckets.get(i).size() > buckets.get(largest).size()) largest = i;
+        }
+        return largest;
+    }
+}
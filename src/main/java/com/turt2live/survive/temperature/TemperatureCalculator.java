@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+/**
+ * Represents the temperature calculation. Nothing here touches the server, so
+ * it is safe to use from any thread.
+ *
+ * @author turt2live
+ */
+public final class TemperatureCalculator {
+
+    /**
+     * The radius around a player searched for heat sources
+     */
+    public static final int SOURCE_RADIUS = 3;
+
+    /**
+     * The temperature given to dead players
+     */
+    public static final int DEAD = -128;
+
+    private final HeatSourceIndex heatSources;
+
+    /**
+     * Creates a new temperature calculator
+     *
+     * @param heatSources the heat sources to use, cannot be null
+     */
+    public TemperatureCalculator(HeatSourceIndex heatSources) {
+        if (heatSources == null) throw new IllegalArgumentException();
+
+        this.heatSources = heatSources;
+    }
+
+    /**
+     * Calculates a player's new temperature, using the heat sources around them
+     *
+     * @param sample the sample to calculate from, cannot be null
+     *
+     * @return the new temperature
+     */
+    public int calculate(TemperatureSample sample) {
+        if (sample == null) throw new IllegalArgumentException();
+        if (sample.isDead()) return calculate(sample, 0, 0);
+
+        double[] sources = new double[2];
+        heatSources.accumulate(sample.getWorld(), sample.getX(), sample.getY(), sample.getZ(), SOURCE_RADIUS, sources);
+        return calculate(sample, sources[0], sources[1]);
+    }
+
+    /**
+     * Calculates a player's new temperature
+     *
+     * @param sample the sample to calculate from, cannot be null
+     * @param warmth the warmth of the sources around the player
+     * @param cold   the cold of the sources around the player
+     *
+     * @return the new temperature
+     */
+    public static int calculate(TemperatureSample sample, double warmth, double cold) {
+        if (sample == null) throw new IllegalArgumentException();
+
+        int temperature;
+        if (sample.isDead()) temperature = DEAD;
+        else {
+            // Armor and item weight are directly related to how much the player has moved
+            double distance = sample.getDistance();
+
+            temperature = (int) Math.round(warmth - cold);
+            temperature += (int) Math.round(distance * sample.getItemWeight());
+            temperature += (int) Math.round(distance * sample.getArmorWeight());
+
+            temperature /= 10;
+
+            // Incorporate world temperature
+            temperature += getWorldTemperature(sample.getTime()) / 2;
+        }
+
+        if (temperature == 0) temperature = 1; // So it doesn't go away
+
+        double diff = Math.abs(sample.getCurrentTemperature() - temperature);
+        if (diff > 8)
+            temperature = (int) Math.round(temperature * 0.4); // Steady increase or decrease
+
+        return temperature;
+    }
+
+    /**
+     * Gets the temperature of a world at a given time of day
+     *
+     * @param time the time of the world
+     *
+     * @return the world temperature
+     */
+    public static int getWorldTemperature(long time) {
+        if (time > 2000 && time < 10000) return 20;
+        else if (time < 22000 && time > 14000) return -20;
+        return 0;
+    }
+}
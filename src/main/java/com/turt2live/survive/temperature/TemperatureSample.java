@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import java.util.UUID;
+
+/**
+ * Represents what a player's temperature is calculated from, captured on the
+ * main thread so the calculation itself can run on any thread. Samples cannot
+ * be changed once made.
+ *
+ * @author turt2live
+ */
+public final class TemperatureSample {
+
+    private final UUID player, world;
+    private final double x, y, z;
+    private final long time;
+    private final boolean dead;
+    private final double itemWeight, armorWeight, distance;
+    private final int currentTemperature;
+
+    /**
+     * Creates a new temperature sample
+     *
+     * @param player             the UID of the player, cannot be null
+     * @param world              the UID of the player's world, cannot be null
+     * @param x                  the X coordinate of the player
+     * @param y                  the Y coordinate of the player
+     * @param z                  the Z coordinate of the player
+     * @param time               the time of the player's world
+     * @param dead               true if the player is dead
+     * @param itemWeight         the weight of the player's inventory
+     * @param armorWeight        the weight of the player's armor
+     * @param distance           the distance the player has moved since the last sample
+     * @param currentTemperature the player's temperature before this sample
+     */
+    public TemperatureSample(UUID player, UUID world, double x, double y, double z, long time, boolean dead,
+                             double itemWeight, double armorWeight, double distance, int currentTemperature) {
+        if (player == null || world == null) throw new IllegalArgumentException();
+
+        this.player = player;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.time = time;
+        this.dead = dead;
+        this.itemWeight = itemWeight;
+        this.armorWeight = armorWeight;
+        this.distance = distance;
+        this.currentTemperature = currentTemperature;
+    }
+
+    /**
+     * Gets the UID of the player
+     *
+     * @return the player UID
+     */
+    public UUID getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the UID of the player's world
+     *
+     * @return the world UID
+     */
+    public UUID getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the X coordinate of the player
+     *
+     * @return the coordinate
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the Y coordinate of the player
+     *
+     * @return the coordinate
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Gets the Z coordinate of the player
+     *
+     * @return the coordinate
+     */
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * Gets the time of the player's world
+     *
+     * @return the world time
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Determines if the player is dead
+     *
+     * @return true if dead, false otherwise
+     */
+    public boolean isDead() {
+        return dead;
+    }
+
+    /**
+     * Gets the weight of the player's inventory
+     *
+     * @return the item weight
+     */
+    public double getItemWeight() {
+        return itemWeight;
+    }
+
+    /**
+     * Gets the weight of the player's armor
+     *
+     * @return the armor weight
+     */
+    public double getArmorWeight() {
+        return armorWeight;
+    }
+
+    /**
+     * Gets the distance the player has moved since the last sample
+     *
+     * @return the distance, in blocks
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Gets the player's temperature before this sample
+     *
+     * @return the current temperature
+     */
+    public int getCurrentTemperature() {
+        return currentTemperature;
+    }
+}
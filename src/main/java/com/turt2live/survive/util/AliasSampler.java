@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Represents an immutable weighted sampler using Walker's alias method. Once
+ * built, every sample takes constant time, a single random draw and no
+ * allocation.
+ *
+ * @author turt2live
+ */
+public final class AliasSampler {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * Creates a new sampler from a set of weights. Outcome 'i' is chosen with
+     * probability weights[i] / sum(weights).
+     *
+     * @param weights the weights, cannot be null or empty. Each weight must be >= 0 and at least one must be > 0
+     */
+    public AliasSampler(double[] weights) {
+        if (weights == null || weights.length == 0) throw new IllegalArgumentException();
+
+        int n = weights.length;
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight))
+                throw new IllegalArgumentException("Invalid weight: " + weight);
+            total += weight;
+        }
+        if (total <= 0) throw new IllegalArgumentException("At least one weight must be positive");
+
+        probability = new double[n];
+        alias = new int[n];
+
+        // Scale so the average is 1, then pair small columns with large ones
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int smallCount = 0, largeCount = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) small[smallCount++] = i;
+            else large[largeCount++] = i;
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+
+            probability[s] = scaled[s];
+            alias[s] = l;
+
+            scaled[l] = (scaled[l] + scaled[s]) - 1;
+            if (scaled[l] < 1) small[smallCount++] = l;
+            else large[largeCount++] = l;
+        }
+
+        // Anything left over is (within rounding) exactly 1
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            probability[l] = 1;
+            alias[l] = l;
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            probability[s] = 1;
+            alias[s] = s;
+        }
+    }
+
+    /**
+     * Gets the number of outcomes of this sampler
+     *
+     * @return the number of outcomes
+     */
+    public int size() {
+        return probability.length;
+    }
+
+    /**
+     * Picks an outcome
+     *
+     * @param random the random to use, cannot be null
+     *
+     * @return the index of the chosen outcome
+     */
+    public int sample(Random random) {
+        double x = random.nextDouble() * probability.length;
+        int column = (int) x;
+        if (column >= probability.length) column = probability.length - 1; // Rounding guard
+
+        return x - column < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * Creates a sampler which gives the same odds as rolling a single value between
+     * 0 and 1, collecting every candidate whose chance is at least the rolled value
+     * and then picking one of those candidates evenly. The returned sampler has one
+     * extra outcome at the end (index = chances.length) for when no candidate was
+     * eligible.
+     *
+     * @param chances the chance of each candidate. Chances outside of 0 to 1 are never chosen.
+     *
+     * @return the sampler
+     */
+    public static AliasSampler fromRollOnce(double[] chances) {
+        if (chances == null) throw new IllegalArgumentException();
+
+        int n = chances.length;
+        double[] weights = new double[n + 1];
+
+        // Sort the valid chances so each interval of the roll has a known number of candidates
+        double[] sorted = new double[n];
+        int valid = 0;
+        for (double chance : chances) {
+            if (chance >= 0 && chance <= 1) sorted[valid++] = chance;
+        }
+        Arrays.sort(sorted, 0, valid);
+
+        // share[k] = probability a candidate with the k'th smallest chance gets, given it's eligible
+        double[] share = new double[valid];
+        double previous = 0, accumulated = 0;
+        for (int k = 0; k < valid; k++) {
+            accumulated += (sorted[k] - previous) / (valid - k);
+            previous = sorted[k];
+            share[k] = accumulated;
+        }
+
+        for (int i = 0; i < n; i++) {
+            double chance = chances[i];
+            if (chance < 0 || chance > 1) continue;
+
+            // The last position with this chance holds every interval up to it
+            int k = Arrays.binarySearch(sorted, 0, valid, chance);
+            while (k + 1 < valid && sorted[k + 1] == chance) k++;
+            weights[i] = share[k];
+        }
+
+        weights[n] = valid == 0 ? 1 : Math.max(0, 1 - sorted[valid - 1]);
+        if (weights[n] == 0 && sum(weights) == 0) weights[n] = 1; // Only zero chances
+
+        return new AliasSampler(weights);
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) total += value;
+        return total;
+    }
+}
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.util;
+
+import java.util.Arrays;
+
+/**
+ * Represents a writable view over the <code>byte[][]</code> section layout used by
+ * {@link org.bukkit.generator.ChunkGenerator#generateBlockSections(org.bukkit.World, java.util.Random, int, int, org.bukkit.generator.ChunkGenerator.BiomeGrid)}.
+ * All writes are clipped to the chunk, sections are created as they are first
+ * written to and the buffer keeps track of which sections were touched.
+ * <p/>
+ * Coordinates are chunk relative: X and Z are between 0 and 15 and Y is between
+ * 0 and the max height. Bounds given as "max" are exclusive. A buffer is not
+ * thread safe, but can be reused for many chunks through {@link #reset(int)}.
+ *
+ * @author turt2live
+ */
+public final class ChunkBuffer {
+
+    private static final int OFFSET_BIAS = 512;
+    private static final int OFFSET_MASK = 0x3FF;
+
+    private byte[][] sections;
+    private int maxHeight;
+    private long touched;
+
+    /**
+     * Creates a new chunk buffer
+     *
+     * @param maxHeight the world's maximum height, must be a positive multiple of 16 no larger than 1024
+     */
+    public ChunkBuffer(int maxHeight) {
+        reset(maxHeight);
+    }
+
+    /**
+     * Starts a new chunk in this buffer. The previous sections are left untouched
+     * so they can still be handed off.
+     *
+     * @param maxHeight the world's maximum height, must be a positive multiple of 16 no larger than 1024
+     *
+     * @return this buffer
+     */
+    public ChunkBuffer reset(int maxHeight) {
+        if (maxHeight <= 0 || maxHeight > 1024 || (maxHeight & 0xF) != 0) throw new IllegalArgumentException();
+
+        this.maxHeight = maxHeight;
+        this.sections = new byte[maxHeight >> 4][];
+        this.touched = 0;
+        return this;
+    }
+
+    /**
+     * Gets the sections backing this buffer. Untouched sections are null.
+     *
+     * @return the sections
+     */
+    public byte[][] getSections() {
+        return sections;
+    }
+
+    /**
+     * Gets the maximum height of this buffer
+     *
+     * @return the maximum height
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Gets a bit mask of the sections that have been written to. Bit 'n' is set
+     * when section 'n' (blocks n*16 to n*16+15) was touched.
+     *
+     * @return the touched section mask
+     */
+    public long getTouchedSections() {
+        return touched;
+    }
+
+    /**
+     * Determines if a section has been written to
+     *
+     * @param section the section index
+     *
+     * @return true if the section was touched, false otherwise
+     */
+    public boolean isTouched(int section) {
+        return section >= 0 && section < 64 && (touched & (1L << section)) != 0;
+    }
+
+    /**
+     * Gets a section for writing, creating it if needed
+     *
+     * @param section the section index, must be valid
+     *
+     * @return the section
+     */
+    public byte[] section(int section) {
+        byte[] blocks = sections[section];
+        if (blocks == null) {
+            blocks = new byte[4096];
+            sections[section] = blocks;
+        }
+        touched |= 1L << section;
+        return blocks;
+    }
+
+    /**
+     * Sets a single block. Out of bounds writes are ignored.
+     *
+     * @param x  the X coordinate
+     * @param y  the Y coordinate
+     * @param z  the Z coordinate
+     * @param id the block ID
+     */
+    // This is a slightly modified version of the method found in the javadocs for ChunkGenerator.
+    // jkcclemens permitted use
+    public void setBlock(int x, int y, int z, int id) {
+        if (!contains(x, y, z)) return;
+        section(y >> 4)[index(x, y, z)] = (byte) id;
+    }
+
+    /**
+     * Gets a single block. Out of bounds reads return air.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     *
+     * @return the block ID
+     */
+    public int getBlock(int x, int y, int z) {
+        if (!contains(x, y, z)) return 0;
+
+        byte[] blocks = sections[y >> 4];
+        return blocks == null ? 0 : blocks[index(x, y, z)] & 0xFF;
+    }
+
+    /**
+     * Fills a box with a single block ID, one row at a time
+     *
+     * @param minX the minimum X, inclusive
+     * @param minY the minimum Y, inclusive
+     * @param minZ the minimum Z, inclusive
+     * @param maxX the maximum X, exclusive
+     * @param maxY the maximum Y, exclusive
+     * @param maxZ the maximum Z, exclusive
+     * @param id   the block ID
+     *
+     * @return the number of blocks written
+     */
+    public int fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int id) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, 16);
+        maxY = Math.min(maxY, maxHeight);
+        maxZ = Math.min(maxZ, 16);
+        if (minX >= maxX || minY >= maxY || minZ >= maxZ) return 0;
+
+        byte b = (byte) id;
+        boolean fullRows = minX == 0 && maxX == 16; // Whole rows are contiguous across Z
+
+        for (int y = minY; y < maxY; y++) {
+            byte[] blocks = section(y >> 4);
+
+            if (fullRows) {
+                Arrays.fill(blocks, index(0, y, minZ), index(0, y, maxZ), b);
+            } else {
+                for (int z = minZ; z < maxZ; z++) {
+                    Arrays.fill(blocks, index(minX, y, z), index(maxX, y, z), b);
+                }
+            }
+        }
+
+        return (maxX - minX) * (maxY - minY) * (maxZ - minZ);
+    }
+
+    /**
+     * Fills a vertical column with a single block ID
+     *
+     * @param x    the X coordinate
+     * @param z    the Z coordinate
+     * @param minY the minimum Y, inclusive
+     * @param maxY the maximum Y, exclusive
+     * @param id   the block ID
+     *
+     * @return the number of blocks written
+     */
+    public int fillColumn(int x, int z, int minY, int maxY, int id) {
+        if (x < 0 || x > 15 || z < 0 || z > 15) return 0;
+        minY = Math.max(minY, 0);
+        maxY = Math.min(maxY, maxHeight);
+
+        byte b = (byte) id;
+        for (int y = minY; y < maxY; y++) {
+            section(y >> 4)[index(x, y, z)] = b;
+        }
+
+        return Math.max(maxY - minY, 0);
+    }
+
+    /**
+     * Writes a list of packed voxel offsets (see {@link #packOffset(int, int, int)})
+     * relative to an origin. The origin may be outside of the chunk, in which case
+     * only the voxels that land inside the chunk are written.
+     *
+     * @param originX the origin X, relative to this chunk
+     * @param originY the origin Y
+     * @param originZ the origin Z, relative to this chunk
+     * @param voxels  the packed offsets, cannot be null
+     * @param id      the block ID
+     *
+     * @return the number of blocks written
+     */
+    public int writeVoxels(int originX, int originY, int originZ, int[] voxels, int id) {
+        byte b = (byte) id;
+        int written = 0;
+
+        for (int voxel : voxels) {
+            int x = originX + unpackX(voxel);
+            int y = originY + unpackY(voxel);
+            int z = originZ + unpackZ(voxel);
+
+            if (contains(x, y, z)) {
+                section(y >> 4)[index(x, y, z)] = b;
+                written++;
+            }
+        }
+
+        return written;
+    }
+
+    private boolean contains(int x, int y, int z) {
+        return x >= 0 && x < 16 && z >= 0 && z < 16 && y >= 0 && y < maxHeight;
+    }
+
+    /**
+     * Gets the index of a block within its section
+     *
+     * @param x the X coordinate, 0 to 15
+     * @param y the Y coordinate
+     * @param z the Z coordinate, 0 to 15
+     *
+     * @return the index within the section
+     */
+    public static int index(int x, int y, int z) {
+        return ((y & 0xF) << 8) | (z << 4) | x;
+    }
+
+    /**
+     * Packs a voxel offset into a single int. Each component must be between
+     * -512 and 511.
+     *
+     * @param dx the X offset
+     * @param dy the Y offset
+     * @param dz the Z offset
+     *
+     * @return the packed offset
+     */
+    public static int packOffset(int dx, int dy, int dz) {
+        return ((dy + OFFSET_BIAS) << 20) | ((dz + OFFSET_BIAS) << 10) | (dx + OFFSET_BIAS);
+    }
+
+    /**
+     * Gets the X offset of a packed voxel offset
+     *
+     * @param packed the offset, as returned by {@link #packOffset(int, int, int)}
+     *
+     * @return the X offset
+     */
+    public static int unpackX(int packed) {
+        return (packed & OFFSET_MASK) - OFFSET_BIAS;
+    }
+
+    /**
+     * Gets the Y offset of a packed voxel offset
+     *
+     * @param packed the offset, as returned by {@link #packOffset(int, int, int)}
+     *
+     * @return the Y offset
+     */
+    public static int unpackY(int packed) {
+        return ((packed >>> 20) & OFFSET_MASK) - OFFSET_BIAS;
+    }
+
+    /**
+     * Gets the Z offset of a packed voxel offset
+     *
+     * @param packed the offset, as returned by {@link #packOffset(int, int, int)}
+     *
+     * @return the Z offset
+     */
+    public static int unpackZ(int packed) {
+        return ((packed >>> 10) & OFFSET_MASK) - OFFSET_BIAS;
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.util;
+
+import java.util.Random;
+
+/**
+ * A fast, unsynchronized random based on SplitMix64. Each chunk gets its own
+ * independent stream derived from (seed, chunk x, chunk z, salt), so the values
+ * drawn for a chunk do not depend on which thread generates it or in which order
+ * chunks are generated.
+ * <p/>
+ * This extends {@link java.util.Random} so it can be handed to anything that
+ * expects one. Instances are not thread safe and should not be shared.
+ *
+ * @author turt2live
+ */
+public final class ChunkRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    /**
+     * Creates a new random with the specified raw state
+     *
+     * @param seed the seed to start from
+     */
+    public ChunkRandom(long seed) {
+        super(0);
+        this.state = seed;
+    }
+
+    /**
+     * Creates a new random for a specific chunk
+     *
+     * @param seed the world seed
+     * @param x    the chunk X coordinate
+     * @param z    the chunk Z coordinate
+     * @param salt the salt which separates this stream from other streams of the same chunk
+     */
+    public ChunkRandom(long seed, int x, int z, long salt) {
+        this(chunkSeed(seed, x, z, salt));
+    }
+
+    /**
+     * Resets this random to the start of a chunk's stream, allowing the instance
+     * to be reused.
+     *
+     * @param seed the world seed
+     * @param x    the chunk X coordinate
+     * @param z    the chunk Z coordinate
+     * @param salt the salt which separates this stream from other streams of the same chunk
+     *
+     * @return this random
+     */
+    public ChunkRandom reset(long seed, int x, int z, long salt) {
+        this.state = chunkSeed(seed, x, z, salt);
+        return this;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("Bound must be positive");
+
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Picks a value between 0 (inclusive) and the bound (exclusive) out of a slice of
+     * an already drawn value. This allows several small values to be taken from one
+     * call to {@link #nextLong()}.
+     *
+     * @param bits   the random bits to use, only the lowest 'width' bits are read
+     * @param width  the number of bits in the slice, between 1 and 32
+     * @param bound  the upper bound, must be positive and much smaller than 2^width
+     *
+     * @return the chosen value
+     */
+    public static int slice(long bits, int width, int bound) {
+        long mask = (1L << width) - 1;
+        return (int) (((bits & mask) * bound) >>> width);
+    }
+
+    /**
+     * Computes the starting state for a chunk's stream
+     *
+     * @param seed the world seed
+     * @param x    the chunk X coordinate
+     * @param z    the chunk Z coordinate
+     * @param salt the stream salt
+     *
+     * @return the starting state
+     */
+    public static long chunkSeed(long seed, int x, int z, long salt) {
+        long h = mix(seed ^ salt);
+        h = mix(h + x * GOLDEN_GAMMA);
+        return mix(h + z * 0xC2B2AE3D27D4EB4FL);
+    }
+
+    /**
+     * The SplitMix64 finalizer. Turns any 64 bit value into a well distributed one.
+     *
+     * @param z the value to mix
+     *
+     * @return the mixed value
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
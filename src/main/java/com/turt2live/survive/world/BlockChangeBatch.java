@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a group of block changes to a world which are applied together.
+ * Changes are collected by chunk and by 16 block high section, then applied a
+ * section at a time with physics off, so sand and gravel stay where they are
+ * put and no neighbour updates run part way through a structure. Each loaded
+ * chunk which changed is refreshed once at the end, and a
+ * {@link com.turt2live.survive.world.ChunkChangedEvent} is called for it; changes
+ * to chunks which are not loaded are handed to {@link com.turt2live.survive.world.DeferredBlockWrites}.
+ * <p/>
+ * A batch can also be applied a few blocks at a time (see {@link #applySome(int)}),
+ * such as by a {@link com.turt2live.survive.world.PlacementScheduler}. Later
+ * changes to the same block replace earlier ones. A batch is not thread safe
+ * and no changes can be added once applying has started.
+ *
+ * @author turt2live
+ */
+public final class BlockChangeBatch {
+
+    private static final AtomicLong TOTAL_WRITES = new AtomicLong();
+    private static final AtomicLong TOTAL_DEFERRED = new AtomicLong();
+    private static final AtomicLong TOTAL_CHUNKS = new AtomicLong();
+
+    private final World world;
+    private final int maxHeight;
+    private final Map<Long, ChunkChanges> chunks = new HashMap<Long, ChunkChanges>();
+    private int size = 0;
+    private boolean applied = false;
+
+    // Where applying is up to
+    private List<ChunkChanges> order;
+    private int chunkIndex = 0, section = 0, writeIndex = 0;
+    private boolean chunkWritten = false;
+
+    private int written = 0, deferred = 0;
+
+    /**
+     * Creates a new block change batch
+     *
+     * @param world the world to change, cannot be null
+     */
+    public BlockChangeBatch(World world) {
+        if (world == null) throw new IllegalArgumentException();
+
+        this.world = world;
+        this.maxHeight = world.getMaxHeight();
+    }
+
+    /**
+     * Adds a block change
+     *
+     * @param x    the X coordinate
+     * @param y    the Y coordinate, changes outside of the world are ignored
+     * @param z    the Z coordinate
+     * @param id   the block ID
+     * @param data the block data
+     */
+    public void setBlock(int x, int y, int z, int id, byte data) {
+        if (applied) throw new IllegalStateException("Batch already being applied");
+        if (y < 0 || y >= maxHeight) return;
+
+        Long key = ((long) (x >> 4) << 32) | ((z >> 4) & 0xFFFFFFFFL);
+        ChunkChanges changes = chunks.get(key);
+        if (changes == null) {
+            changes = new ChunkChanges(x >> 4, z >> 4, (maxHeight + 15) >> 4);
+            chunks.put(key, changes);
+        }
+
+        changes.add(x & 0xF, y, z & 0xF, id, data);
+        size++;
+    }
+
+    /**
+     * Adds a block change with a data value of 0
+     *
+     * @param x        the X coordinate
+     * @param y        the Y coordinate, changes outside of the world are ignored
+     * @param z        the Z coordinate
+     * @param material the material to set, cannot be null
+     */
+    public void setBlock(int x, int y, int z, Material material) {
+        setBlock(x, y, z, material.getId(), (byte) 0);
+    }
+
+    /**
+     * Gets the number of changes in this batch
+     *
+     * @return the number of changes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Applies every change in this batch which has not been applied yet. This must be
+     * called on the main thread.
+     */
+    public void apply() {
+        applySome(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Applies up to a number of the changes in this batch, continuing from where the
+     * last call stopped. A chunk is refreshed once all of its changes are applied. This
+     * must be called on the main thread.
+     *
+     * @param maxChanges the most changes to apply, must be > 0
+     *
+     * @return the number of changes applied or deferred by this call
+     */
+    public int applySome(int maxChanges) {
+        if (maxChanges <= 0) throw new IllegalArgumentException();
+
+        if (!applied) {
+            applied = true;
+            order = new ArrayList<ChunkChanges>(chunks.values());
+            chunks.clear();
+        }
+
+        int done = 0, writtenBefore = written, deferredBefore = deferred;
+        DeferredBlockWrites pending = null;
+
+        while (done < maxChanges && chunkIndex < order.size()) {
+            ChunkChanges changes = order.get(chunkIndex);
+
+            // Checked on every call, the chunk may have loaded or unloaded since the last one
+            Chunk chunk = world.isChunkLoaded(changes.chunkX, changes.chunkZ) ? world.getChunkAt(changes.chunkX, changes.chunkZ) : null;
+            if (chunk != null) chunkWritten = true;
+
+            while (done < maxChanges && section < changes.sections.length) {
+                long[] writes = changes.sections[section];
+                int count = changes.counts[section];
+
+                if (chunk != null) {
+                    for (; writeIndex < count && done < maxChanges; writeIndex++, done++) {
+                        long write = writes[writeIndex];
+                        chunk.getBlock(BlockWrites.x(write), BlockWrites.y(write), BlockWrites.z(write))
+                                .setTypeIdAndData(BlockWrites.id(write), BlockWrites.data(write), false);
+                        written++;
+                    }
+                } else {
+                    if (pending == null) pending = DeferredBlockWrites.get(world);
+                    for (; writeIndex < count && done < maxChanges; writeIndex++, done++) {
+                        long write = writes[writeIndex];
+                        pending.queue(changes.chunkX, changes.chunkZ, BlockWrites.x(write), BlockWrites.y(write), BlockWrites.z(write),
+                                BlockWrites.id(write), BlockWrites.data(write));
+                        deferred++;
+                    }
+                }
+
+                if (writeIndex >= count) {
+                    section++;
+                    writeIndex = 0;
+                }
+            }
+
+            if (section >= changes.sections.length) {
+                if (chunkWritten) {
+                    world.refreshChunk(changes.chunkX, changes.chunkZ);
+                    TOTAL_CHUNKS.incrementAndGet();
+                    if (world.isChunkLoaded(changes.chunkX, changes.chunkZ))
+                        Bukkit.getPluginManager().callEvent(new ChunkChangedEvent(world.getChunkAt(changes.chunkX, changes.chunkZ)));
+                }
+                order.set(chunkIndex++, null); // Let the applied changes be collected
+                section = 0;
+                writeIndex = 0;
+                chunkWritten = false;
+            }
+        }
+
+        TOTAL_WRITES.addAndGet(written - writtenBefore);
+        TOTAL_DEFERRED.addAndGet(deferred - deferredBefore);
+        return done;
+    }
+
+    /**
+     * Determines if every change in this batch has been applied
+     *
+     * @return true if finished, false otherwise
+     */
+    public boolean isDone() {
+        return applied ? chunkIndex >= order.size() : size == 0;
+    }
+
+    /**
+     * Gets the number of changes in this batch which have not been applied yet
+     *
+     * @return the number of changes left
+     */
+    public int getRemaining() {
+        return size - written - deferred;
+    }
+
+    /**
+     * Gets the number of blocks written by all batches
+     *
+     * @return the total number of blocks written
+     */
+    public static long getTotalWrittenCount() {
+        return TOTAL_WRITES.get();
+    }
+
+    /**
+     * Gets the number of changes queued by all batches for chunks which were not loaded
+     *
+     * @return the total number of deferred changes
+     */
+    public static long getTotalDeferredCount() {
+        return TOTAL_DEFERRED.get();
+    }
+
+    /**
+     * Gets the number of loaded chunks changed by all batches. A chunk changed by two
+     * batches is counted twice.
+     *
+     * @return the total number of chunks touched
+     */
+    public static long getTotalChunksTouched() {
+        return TOTAL_CHUNKS.get();
+    }
+
+    private static final class ChunkChanges {
+
+        private final int chunkX, chunkZ;
+        private final long[][] sections;
+        private final int[] counts;
+
+        ChunkChanges(int chunkX, int chunkZ, int sectionCount) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.sections = new long[sectionCount][];
+            this.counts = new int[sectionCount];
+        }
+
+        void add(int x, int y, int z, int id, byte data) {
+            int section = y >> 4;
+            long[] writes = sections[section];
+            if (writes == null) writes = sections[section] = new long[16];
+            else if (counts[section] == writes.length) writes = sections[section] = Arrays.copyOf(writes, writes.length * 2);
+
+            writes[counts[section]++] = BlockWrites.pack(x, y, z, id, data);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+/**
+ * Packs a single block write within a chunk into a long, so batches and
+ * deferred writes can hold large numbers of them without an object per block.
+ * Writes are packed as: data (4) | id (12) | y (12) | z (4) | x (4)
+ *
+ * @author turt2live
+ */
+final class BlockWrites {
+
+    private BlockWrites() {
+    }
+
+    /**
+     * Packs a block write
+     *
+     * @param x    the x coordinate within the chunk, 0-15
+     * @param y    the y coordinate, 0-4095
+     * @param z    the z coordinate within the chunk, 0-15
+     * @param id   the block type ID, 0-4095
+     * @param data the block data, 0-15
+     *
+     * @return the packed write
+     */
+    static long pack(int x, int y, int z, int id, byte data) {
+        return ((long) (data & 0xF) << 32) | ((long) (id & 0xFFF) << 20) | ((y & 0xFFF) << 8) | ((z & 0xF) << 4) | (x & 0xF);
+    }
+
+    static int x(long write) {
+        return (int) (write & 0xF);
+    }
+
+    static int z(long write) {
+        return (int) ((write >>> 4) & 0xF);
+    }
+
+    static int y(long write) {
+        return (int) ((write >>> 8) & 0xFFF);
+    }
+
+    static int id(long write) {
+        return (int) ((write >>> 20) & 0xFFF);
+    }
+
+    static byte data(long write) {
+        return (byte) ((write >>> 32) & 0xF);
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.bukkit.Chunk;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.world.ChunkEvent;
+
+/**
+ * Called when a {@link com.turt2live.survive.world.BlockChangeBatch} has finished
+ * writing to a loaded chunk. Batches write with physics off and without block
+ * events, so this is the only sign that the chunk's blocks have changed.
+ *
+ * @author turt2live
+ */
+public class ChunkChangedEvent extends ChunkEvent {
+
+    private static final HandlerList handlers = new HandlerList();
+
+    /**
+     * Creates a new chunk changed event
+     *
+     * @param chunk the chunk which changed, cannot be null
+     */
+    public ChunkChangedEvent(Chunk chunk) {
+        super(chunk);
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
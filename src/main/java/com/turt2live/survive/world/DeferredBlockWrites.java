@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Represents the block writes of a world which are waiting for their chunk
+ * to load. Structures that spill over into neighbouring chunks write through
+ * this so that a write never forces a chunk to load or generate: writes to
+ * loaded chunks are applied right away and all others are queued until the
+ * chunk loads (see {@link com.turt2live.survive.world.DeferredWriteListener}).
+ * <p/>
+ * Pending writes are held in memory only and are lost when the server stops.
+ *
+ * @author turt2live
+ */
+public final class DeferredBlockWrites {
+
+    private static final ConcurrentMap<UUID, DeferredBlockWrites> STORES = new ConcurrentHashMap<UUID, DeferredBlockWrites>();
+
+    private final World world;
+    private final Map<Long, PendingChunk> pending = new HashMap<Long, PendingChunk>();
+    private int pendingWrites = 0;
+
+    private DeferredBlockWrites(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Writes a block, queueing the write if the block's chunk is not loaded
+     *
+     * @param x    the X coordinate
+     * @param y    the Y coordinate
+     * @param z    the Z coordinate
+     * @param id   the block ID
+     * @param data the block data
+     *
+     * @return true if the write was applied right away, false if it was queued or out of bounds
+     */
+    public boolean setBlock(int x, int y, int z, int id, byte data) {
+        if (y < 0 || y >= world.getMaxHeight()) return false;
+
+        int cx = x >> 4, cz = z >> 4;
+        if (world.isChunkLoaded(cx, cz)) {
+            world.getBlockAt(x, y, z).setTypeIdAndData(id, data, false);
+            return true;
+        }
+
+        queue(cx, cz, x & 0xF, y, z & 0xF, id, data);
+        return false;
+    }
+
+    /**
+     * Queues a write for a chunk without checking if it is loaded
+     *
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     * @param x      the X coordinate within the chunk, 0 to 15
+     * @param y      the Y coordinate
+     * @param z      the Z coordinate within the chunk, 0 to 15
+     * @param id     the block ID
+     * @param data   the block data
+     */
+    public synchronized void queue(int chunkX, int chunkZ, int x, int y, int z, int id, byte data) {
+        Long key = key(chunkX, chunkZ);
+        PendingChunk chunk = pending.get(key);
+        if (chunk == null) {
+            chunk = new PendingChunk();
+            pending.put(key, chunk);
+        }
+
+        chunk.add(x, y, z, id, data);
+        pendingWrites++;
+    }
+
+    /**
+     * Applies and forgets all writes queued for a chunk. This should be called once
+     * the chunk is loaded.
+     *
+     * @param chunk the chunk, cannot be null
+     *
+     * @return the number of writes applied
+     */
+    public int apply(Chunk chunk) {
+        PendingChunk writes;
+        synchronized (this) {
+            writes = pending.remove(key(chunk.getX(), chunk.getZ()));
+            if (writes == null) return 0;
+            pendingWrites -= writes.size;
+        }
+
+        for (int i = 0; i < writes.size; i++) {
+            long write = writes.writes[i];
+            chunk.getBlock(BlockWrites.x(write), BlockWrites.y(write), BlockWrites.z(write))
+                    .setTypeIdAndData(BlockWrites.id(write), BlockWrites.data(write), false);
+        }
+
+        return writes.size;
+    }
+
+    /**
+     * Gets the number of writes waiting for their chunk to load
+     *
+     * @return the number of pending writes
+     */
+    public synchronized int getPendingWrites() {
+        return pendingWrites;
+    }
+
+    /**
+     * Gets the number of chunks with writes waiting for them
+     *
+     * @return the number of pending chunks
+     */
+    public synchronized int getPendingChunks() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the deferred writes for a world, creating the store if needed
+     *
+     * @param world the world, cannot be null
+     *
+     * @return the deferred writes of the world
+     */
+    public static DeferredBlockWrites get(World world) {
+        if (world == null) throw new IllegalArgumentException();
+
+        DeferredBlockWrites store = STORES.get(world.getUID());
+        if (store == null) {
+            STORES.putIfAbsent(world.getUID(), new DeferredBlockWrites(world));
+            store = STORES.get(world.getUID());
+        }
+        return store;
+    }
+
+    /**
+     * Gets the deferred writes for a world if it has any
+     *
+     * @param world the world, cannot be null
+     *
+     * @return the deferred writes of the world, or null if none were ever made
+     */
+    public static DeferredBlockWrites getIfPresent(World world) {
+        return STORES.get(world.getUID());
+    }
+
+    /**
+     * Discards the deferred writes of a world, such as when it unloads
+     *
+     * @param world the world, cannot be null
+     */
+    public static void discard(World world) {
+        STORES.remove(world.getUID());
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static final class PendingChunk {
+
+        private long[] writes = new long[16];
+        private int size = 0;
+
+        void add(int x, int y, int z, int id, byte data) {
+            if (size == writes.length) writes = Arrays.copyOf(writes, size * 2);
+            writes[size++] = BlockWrites.pack(x, y, z, id, data);
+        }
+    }
+}
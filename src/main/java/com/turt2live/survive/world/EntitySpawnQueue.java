@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Animals;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+
+/**
+ * Spawns entities requested by populators a few at a time rather than all at
+ * once. Each region (8 by 8 chunks) of a world has a cap on how many animals
+ * it may hold, counting every animal and not only the ones queued here, so the
+ * cap still holds after a restart. The animals in each loaded chunk are
+ * counted when it loads and forgotten when it unloads, and counters go up on
+ * spawn and down on death in between, so checking the cap never scans the
+ * world's entities. An animal which wanders off is counted in its old chunk
+ * until that chunk unloads.
+ * <p/>
+ * Spawns for chunks which are not loaded when their turn comes are dropped.
+ * Until the queue is started (and after it is stopped) spawns happen as soon
+ * as they are requested, without a cap. When asked to, the queue logs what it
+ * spawned and skipped once a minute. This is only to be used from the main
+ * thread.
+ *
+ * @author turt2live
+ */
+public final class EntitySpawnQueue implements Runnable, Listener {
+
+    private static final int REGION_SHIFT = 3; // 8 chunks
+    private static final int TIMING_REPORT_TICKS = 20 * 60;
+
+    private static EntitySpawnQueue instance;
+
+    private final Plugin plugin;
+    private final int spawnsPerTick;
+    private final int regionCap;
+    private final boolean logTimings;
+    private final Queue<Spawn> queue = new ArrayDeque<Spawn>();
+    private final Map<UUID, Map<Long, int[]>> chunkCounts = new HashMap<UUID, Map<Long, int[]>>();
+    private final Map<UUID, Map<Long, int[]>> regionCounts = new HashMap<UUID, Map<Long, int[]>>();
+    private int taskId = -1;
+
+    // Since the last timing report
+    private int ticks = 0;
+    private long spawned = 0, capped = 0, dropped = 0;
+
+    private EntitySpawnQueue(Plugin plugin, int spawnsPerTick, int regionCap, boolean logTimings) {
+        this.plugin = plugin;
+        this.spawnsPerTick = spawnsPerTick;
+        this.regionCap = regionCap;
+        this.logTimings = logTimings;
+    }
+
+    /**
+     * Starts the spawn queue, replacing any which was running
+     *
+     * @param plugin        the plugin to run the queue for, cannot be null
+     * @param spawnsPerTick the most entities to spawn per tick, must be > 0
+     * @param regionCap     the most animals alive in one region, must be > 0
+     * @param logTimings    if true, the spawns made and skipped are logged once a minute
+     */
+    public static void start(Plugin plugin, int spawnsPerTick, int regionCap, boolean logTimings) {
+        if (plugin == null || spawnsPerTick <= 0 || regionCap <= 0) throw new IllegalArgumentException();
+
+        stop();
+        EntitySpawnQueue spawnQueue = new EntitySpawnQueue(plugin, spawnsPerTick, regionCap, logTimings);
+        spawnQueue.taskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, spawnQueue, 1, 1);
+        plugin.getServer().getPluginManager().registerEvents(spawnQueue, plugin);
+
+        // Chunks loaded before now (after a reload, for instance) never fire a load event for us
+        for (World world : plugin.getServer().getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                spawnQueue.countChunk(chunk);
+            }
+        }
+
+        instance = spawnQueue;
+    }
+
+    /**
+     * Stops the spawn queue, if it is running. Spawns still waiting are made
+     * first, except those for chunks which are not loaded or regions which are full.
+     */
+    public static void stop() {
+        EntitySpawnQueue spawnQueue = instance;
+        if (spawnQueue == null) return;
+
+        instance = null;
+        if (spawnQueue.taskId != -1) spawnQueue.plugin.getServer().getScheduler().cancelTask(spawnQueue.taskId);
+        while (!spawnQueue.queue.isEmpty()) {
+            spawnQueue.spawn(spawnQueue.queue.poll());
+        }
+        spawnQueue.chunkCounts.clear();
+        spawnQueue.regionCounts.clear();
+    }
+
+    /**
+     * Requests an entity be spawned. If the queue is not running the entity is spawned right away.
+     *
+     * @param location the location to spawn at, with a world. Cannot be null.
+     * @param type     the type of entity to spawn, cannot be null
+     */
+    public static void enqueue(Location location, EntityType type) {
+        if (location == null || location.getWorld() == null || type == null) throw new IllegalArgumentException();
+
+        EntitySpawnQueue spawnQueue = instance;
+        if (spawnQueue == null) location.getWorld().spawnEntity(location, type);
+        else spawnQueue.queue.add(new Spawn(location.clone(), type));
+    }
+
+    /**
+     * Gets the running spawn queue
+     *
+     * @return the spawn queue, or null if not running
+     */
+    public static EntitySpawnQueue getInstance() {
+        return instance;
+    }
+
+    @Override
+    public void run() {
+        if (logTimings && ++ticks % TIMING_REPORT_TICKS == 0) report();
+
+        for (int i = 0; i < spawnsPerTick && !queue.isEmpty(); i++) {
+            spawn(queue.poll());
+        }
+    }
+
+    private void report() {
+        plugin.getLogger().info("Spawning: " + spawned + " spawned, " + capped + " skipped for full regions, "
+                + dropped + " dropped for unloaded chunks, " + queue.size() + " waiting");
+        spawned = 0;
+        capped = 0;
+        dropped = 0;
+    }
+
+    private void spawn(Spawn spawn) {
+        Location location = spawn.location;
+        World world = location.getWorld();
+        int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+
+        if (!world.isChunkLoaded(chunkX, chunkZ)) {
+            dropped++;
+            return;
+        }
+
+        int[] region = count(regionCounts, world.getUID(), region(chunkX, chunkZ), true);
+        if (region[0] >= regionCap) {
+            capped++;
+            return;
+        }
+
+        Entity entity = world.spawnEntity(location, spawn.type);
+        if (entity == null) return;
+
+        spawned++;
+        if (entity instanceof Animals) {
+            count(chunkCounts, world.getUID(), key(chunkX, chunkZ), true)[0]++;
+            region[0]++;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        Entity entity = event.getEntity();
+        if (!(entity instanceof Animals)) return;
+
+        Location location = entity.getLocation();
+        int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+        UUID uid = entity.getWorld().getUID();
+
+        int[] chunk = count(chunkCounts, uid, key(chunkX, chunkZ), false);
+        if (chunk == null || chunk[0] <= 0) return; // Counted elsewhere, see the class documentation
+        chunk[0]--;
+
+        int[] region = count(regionCounts, uid, region(chunkX, chunkZ), false);
+        if (region != null && region[0] > 0) region[0]--;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        countChunk(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        forgetChunk(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        UUID uid = event.getWorld().getUID();
+        chunkCounts.remove(uid);
+        regionCounts.remove(uid);
+
+        Iterator<Spawn> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().location.getWorld().getUID().equals(uid)) iterator.remove();
+        }
+    }
+
+    private void countChunk(Chunk chunk) {
+        forgetChunk(chunk); // In case it was counted already
+
+        int animals = 0;
+        for (Entity entity : chunk.getEntities()) {
+            if (entity instanceof Animals) animals++;
+        }
+        if (animals == 0) return;
+
+        UUID uid = chunk.getWorld().getUID();
+        count(chunkCounts, uid, key(chunk.getX(), chunk.getZ()), true)[0] = animals;
+        count(regionCounts, uid, region(chunk.getX(), chunk.getZ()), true)[0] += animals;
+    }
+
+    private void forgetChunk(Chunk chunk) {
+        UUID uid = chunk.getWorld().getUID();
+        Map<Long, int[]> chunks = chunkCounts.get(uid);
+        int[] animals = chunks == null ? null : chunks.remove(key(chunk.getX(), chunk.getZ()));
+        if (animals == null) return;
+
+        Map<Long, int[]> regions = regionCounts.get(uid);
+        long key = region(chunk.getX(), chunk.getZ());
+        int[] region = regions == null ? null : regions.get(key);
+        if (region == null) return;
+
+        region[0] -= animals[0];
+        if (region[0] <= 0) regions.remove(key);
+    }
+
+    private static int[] count(Map<UUID, Map<Long, int[]>> counts, UUID world, long key, boolean create) {
+        Map<Long, int[]> keys = counts.get(world);
+        if (keys == null) {
+            if (!create) return null;
+            keys = new HashMap<Long, int[]>();
+            counts.put(world, keys);
+        }
+
+        int[] count = keys.get(key);
+        if (count == null && create) {
+            count = new int[1];
+            keys.put(key, count);
+        }
+        return count;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static long region(int chunkX, int chunkZ) {
+        return key(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+    }
+
+    private static final class Spawn {
+
+        private final Location location;
+        private final EntityType type;
+
+        Spawn(Location location, EntityType type) {
+            this.location = location;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the block changes of one structure or decorator pass, applied in
+ * order by the {@link com.turt2live.survive.world.PlacementScheduler}. Callbacks
+ * added with {@link #onComplete(Runnable)} run once every change is applied,
+ * which is where markers such as "this sphere is populated" belong.
+ *
+ * @author turt2live
+ */
+public final class PlacementJob {
+
+    private final World world;
+    private final int chunkX, chunkZ;
+    private final List<BlockChangeBatch> batches = new ArrayList<BlockChangeBatch>();
+    private final List<Runnable> callbacks = new ArrayList<Runnable>();
+    private int current = 0;
+    private boolean completed = false;
+    long priority; // Set by the scheduler each tick, lower goes first
+
+    /**
+     * Creates a new placement job
+     *
+     * @param world  the world the job changes, cannot be null
+     * @param chunkX the X coordinate of the chunk the job is for, used to prioritize it
+     * @param chunkZ the Z coordinate of the chunk the job is for, used to prioritize it
+     */
+    public PlacementJob(World world, int chunkX, int chunkZ) {
+        if (world == null) throw new IllegalArgumentException();
+
+        this.world = world;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    /**
+     * Adds a batch of changes, applied after the batches added before it
+     *
+     * @param batch the batch to add, cannot be null
+     */
+    public void add(BlockChangeBatch batch) {
+        if (batch == null) throw new IllegalArgumentException();
+        if (completed) throw new IllegalStateException("Job already completed");
+
+        batches.add(batch);
+    }
+
+    /**
+     * Adds a callback to run on the main thread once every change in this job is applied
+     *
+     * @param callback the callback, cannot be null
+     */
+    public void onComplete(Runnable callback) {
+        if (callback == null) throw new IllegalArgumentException();
+        if (completed) throw new IllegalStateException("Job already completed");
+
+        callbacks.add(callback);
+    }
+
+    /**
+     * Applies up to a number of this job's changes. The callbacks are run by the call
+     * which applies the last change.
+     *
+     * @param maxChanges the most changes to apply, must be > 0
+     *
+     * @return the number of changes applied
+     */
+    public int step(int maxChanges) {
+        if (maxChanges <= 0) throw new IllegalArgumentException();
+
+        int done = 0;
+        while (done < maxChanges && current < batches.size()) {
+            BlockChangeBatch batch = batches.get(current);
+            done += batch.applySome(maxChanges - done);
+            if (batch.isDone()) batches.set(current++, null);
+        }
+
+        if (current >= batches.size() && !completed) {
+            completed = true;
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+            callbacks.clear();
+        }
+
+        return done;
+    }
+
+    /**
+     * Applies every remaining change in this job and runs its callbacks
+     */
+    public void complete() {
+        step(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Determines if every change has been applied and the callbacks have run
+     *
+     * @return true if completed, false otherwise
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Gets the number of changes which have not been applied yet
+     *
+     * @return the number of changes left
+     */
+    public int getRemaining() {
+        int remaining = 0;
+        for (int i = current; i < batches.size(); i++) {
+            remaining += batches.get(i).getRemaining();
+        }
+        return remaining;
+    }
+
+    /**
+     * Gets the world this job changes
+     *
+     * @return the world
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the X coordinate of the chunk this job is for
+     *
+     * @return the chunk X coordinate
+     */
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    /**
+     * Gets the Z coordinate of the chunk this job is for
+     *
+     * @return the chunk Z coordinate
+     */
+    public int getChunkZ() {
+        return chunkZ;
+    }
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Applies {@link com.turt2live.survive.world.PlacementJob}s a few blocks at a
+ * time, so a large structure is built over several ticks instead of stalling
+ * one. Each tick spends at most a set number of block changes and a set amount
+ * of time, on the jobs closest to a player first.
+ * <p/>
+ * Until the scheduler is started (and after it is stopped) jobs are applied as
+ * soon as they are scheduled. When asked to, the scheduler logs how much of the
+ * budget it used once a minute. This is only to be used from the main thread.
+ *
+ * @author turt2live
+ */
+public final class PlacementScheduler implements Runnable, Listener {
+
+    private static final int STEP = 256; // Changes between checks of the clock
+    private static final int TIMING_REPORT_TICKS = 20 * 60;
+
+    private static PlacementScheduler instance;
+
+    private final List<PlacementJob> jobs = new ArrayList<PlacementJob>();
+    private final List<PlacementJob> incoming = new ArrayList<PlacementJob>(); // Scheduled during a tick
+    private final Plugin plugin;
+    private final int changesPerTick;
+    private final long nanosPerTick;
+    private final boolean logTimings;
+    private int taskId = -1;
+    private boolean ticking = false;
+
+    // Since the last timing report
+    private int ticks = 0;
+    private long completedJobs = 0;
+    private long changes = 0;
+    private long nanos = 0, maxNanos = 0;
+
+    private PlacementScheduler(Plugin plugin, int changesPerTick, long nanosPerTick, boolean logTimings) {
+        this.plugin = plugin;
+        this.changesPerTick = changesPerTick;
+        this.nanosPerTick = nanosPerTick;
+        this.logTimings = logTimings;
+    }
+
+    /**
+     * Starts the scheduler, replacing any which was running
+     *
+     * @param plugin         the plugin to run the scheduler for, cannot be null
+     * @param changesPerTick the most block changes to apply per tick, must be > 0
+     * @param nanosPerTick   the most time to spend per tick, in nanoseconds, must be > 0
+     * @param logTimings     if true, the changes applied and time spent are logged once a minute
+     */
+    public static void start(Plugin plugin, int changesPerTick, long nanosPerTick, boolean logTimings) {
+        if (plugin == null || changesPerTick <= 0 || nanosPerTick <= 0) throw new IllegalArgumentException();
+
+        stop();
+        PlacementScheduler scheduler = new PlacementScheduler(plugin, changesPerTick, nanosPerTick, logTimings);
+        scheduler.taskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, scheduler, 1, 1);
+        plugin.getServer().getPluginManager().registerEvents(scheduler, plugin);
+        instance = scheduler;
+    }
+
+    /**
+     * Stops the scheduler, if it is running. Every job still waiting is applied first.
+     */
+    public static void stop() {
+        PlacementScheduler scheduler = instance;
+        if (scheduler == null) return;
+
+        instance = null;
+        if (scheduler.taskId != -1) scheduler.plugin.getServer().getScheduler().cancelTask(scheduler.taskId);
+
+        scheduler.jobs.addAll(scheduler.incoming);
+        scheduler.incoming.clear();
+        for (PlacementJob job : scheduler.jobs) {
+            job.complete();
+        }
+        scheduler.jobs.clear();
+    }
+
+    /**
+     * Schedules a job. If the scheduler is not running the job is applied right away.
+     *
+     * @param job the job to schedule, cannot be null
+     */
+    public static void schedule(PlacementJob job) {
+        if (job == null) throw new IllegalArgumentException();
+
+        PlacementScheduler scheduler = instance;
+        if (scheduler == null) job.complete();
+        else if (scheduler.ticking) scheduler.incoming.add(job);
+        else scheduler.jobs.add(job);
+    }
+
+    @Override
+    public void run() {
+        if (logTimings && ++ticks % TIMING_REPORT_TICKS == 0) report();
+        if (jobs.isEmpty()) return;
+
+        long start = System.nanoTime();
+        long deadline = start + nanosPerTick;
+        prioritize();
+        ticking = true;
+
+        int left = changesPerTick;
+        try {
+            Iterator<PlacementJob> iterator = jobs.iterator();
+            while (iterator.hasNext() && left > 0 && System.nanoTime() < deadline) {
+                PlacementJob job = iterator.next();
+
+                try {
+                    while (left > 0 && !job.isCompleted() && System.nanoTime() < deadline) {
+                        left -= job.step(Math.min(left, STEP));
+                    }
+                } catch (RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "Error placing blocks, skipping the rest of the structure", e);
+                    iterator.remove();
+                    continue;
+                }
+
+                if (job.isCompleted()) {
+                    iterator.remove();
+                    completedJobs++;
+                }
+            }
+        } finally {
+            ticking = false;
+            jobs.addAll(incoming);
+            incoming.clear();
+        }
+
+        long taken = System.nanoTime() - start;
+        changes += changesPerTick - left;
+        nanos += taken;
+        maxNanos = Math.max(maxNanos, taken);
+    }
+
+    private void report() {
+        long remaining = 0;
+        for (PlacementJob job : jobs) {
+            remaining += job.getRemaining();
+        }
+        for (PlacementJob job : incoming) {
+            remaining += job.getRemaining();
+        }
+
+        plugin.getLogger().info("Placement: " + changes + " changes in " + (nanos / 1000000) + "ms (max "
+                + (maxNanos / 1000000) + "ms in one tick), " + completedJobs + " jobs completed, "
+                + (jobs.size() + incoming.size()) + " waiting with " + remaining + " changes left");
+        plugin.getLogger().info("Placement totals: " + BlockChangeBatch.getTotalWrittenCount() + " blocks written to "
+                + BlockChangeBatch.getTotalChunksTouched() + " chunks, " + BlockChangeBatch.getTotalDeferredCount()
+                + " deferred to unloaded chunks");
+
+        for (World world : plugin.getServer().getWorlds()) {
+            DeferredBlockWrites writes = DeferredBlockWrites.getIfPresent(world);
+            if (writes != null && writes.getPendingWrites() > 0)
+                plugin.getLogger().info("Deferred writes in " + world.getName() + ": " + writes.getPendingWrites()
+                        + " waiting for " + writes.getPendingChunks() + " chunks to load");
+        }
+
+        completedJobs = 0;
+        changes = 0;
+        nanos = 0;
+        maxNanos = 0;
+    }
+
+    // Orders the jobs by the squared chunk distance to the closest player in their world
+    private void prioritize() {
+        List<World> worlds = new ArrayList<World>();
+        List<int[]> players = new ArrayList<int[]>();
+        Location location = new Location(null, 0, 0, 0);
+
+        for (PlacementJob job : jobs) {
+            World world = job.getWorld();
+            int index = worlds.indexOf(world);
+            if (index < 0) {
+                List<Player> online = world.getPlayers();
+                int[] chunks = new int[online.size() * 2];
+                for (int i = 0; i < online.size(); i++) {
+                    online.get(i).getLocation(location);
+                    chunks[i * 2] = location.getBlockX() >> 4;
+                    chunks[i * 2 + 1] = location.getBlockZ() >> 4;
+                }
+                worlds.add(world);
+                players.add(chunks);
+                index = worlds.size() - 1;
+            }
+
+            int[] chunks = players.get(index);
+            long closest = Long.MAX_VALUE;
+            for (int i = 0; i < chunks.length; i += 2) {
+                long dx = chunks[i] - job.getChunkX(), dz = chunks[i + 1] - job.getChunkZ();
+                closest = Math.min(closest, dx * dx + dz * dz);
+            }
+            job.priority = closest;
+        }
+
+        Collections.sort(jobs, new Comparator<PlacementJob>() { // Stable, so ties stay in order
+            @Override
+            public int compare(PlacementJob a, PlacementJob b) {
+                return a.priority < b.priority ? -1 : (a.priority == b.priority ? 0 : 1);
+            }
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        // The world's chunks and deferred writes are gone, so are the jobs for it
+        Iterator<PlacementJob> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getWorld().equals(event.getWorld())) iterator.remove();
+        }
+    }
+}
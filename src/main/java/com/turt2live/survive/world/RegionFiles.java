@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Represents the region files of a world on disk, used to find out which
+ * chunks have already been saved without asking the server to load them. Only
+ * the header of each region file is read, once, so the answers are as of the
+ * first question asked about each region. This class is thread safe.
+ *
+ * @author turt2live
+ */
+public final class RegionFiles {
+
+    private static final int[] NONE = new int[0];
+
+    private final File folder;
+    private final ConcurrentMap<Long, int[]> headers = new ConcurrentHashMap<Long, int[]>();
+
+    /**
+     * Creates a new view of a world's region files
+     *
+     * @param folder the world's region folder, cannot be null. May not exist.
+     */
+    public RegionFiles(File folder) {
+        if (folder == null) throw new IllegalArgumentException();
+
+        this.folder = folder;
+    }
+
+    /**
+     * Determines if a chunk has been saved to disk
+     *
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     *
+     * @return true if the chunk's region file has it, false otherwise
+     */
+    public boolean hasChunk(int chunkX, int chunkZ) {
+        int regionX = chunkX >> 5, regionZ = chunkZ >> 5;
+        long key = ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+
+        int[] offsets = headers.get(key);
+        if (offsets == null) {
+            offsets = readHeader(new File(folder, "r." + regionX + "." + regionZ + ".mca"));
+            headers.putIfAbsent(key, offsets);
+        }
+
+        return offsets.length > 0 && offsets[(chunkX & 31) + (chunkZ & 31) * 32] != 0;
+    }
+
+    // The first 4KB of a region file holds one offset per chunk, 0 if the chunk is not there
+    private static int[] readHeader(File file) {
+        if (!file.isFile()) return NONE;
+
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                if (input.length() < 4096) return NONE;
+
+                int[] offsets = new int[1024];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = input.readInt();
+                }
+                return offsets;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return NONE; // Unreadable, let the server decide what to do with it
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import com.turt2live.survive.util.ChunkBuffer;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents a read-only view of a world's blocks for populators, backed by
+ * {@link org.bukkit.ChunkSnapshot}s. Each loaded chunk read from is captured
+ * once, after which reads create no Block or Location objects.
+ * <p/>
+ * Chunks which are not loaded are never loaded or generated by a read, as that
+ * would cascade generation into them from a populator. Their blocks read as
+ * {@link #UNKNOWN} instead, and callers should leave them alone.
+ * <p/>
+ * Snapshots do not see later changes to the world. Populators that read back
+ * their own writes record them with {@link #set(int, int, int, int)}, and
+ * reads check those first. Recorded writes are kept per chunk section, like the
+ * chunk's own blocks, so recording and reading them allocates nothing past the
+ * first write to a section. This is not thread safe.
+ *
+ * @author turt2live
+ */
+public final class SnapshotBlockReader {
+
+    /**
+     * The ID read for blocks in chunks which are not loaded
+     */
+    public static final int UNKNOWN = -1;
+
+    private final World world;
+    private final int maxHeight;
+    private final int sections;
+    private final Map<Long, ChunkView> chunks = new HashMap<Long, ChunkView>();
+    private long lastKey;
+    private ChunkView last; // Reads tend to stay in one chunk, this skips the map for them
+
+    /**
+     * Creates a new snapshot block reader
+     *
+     * @param world the world to read from, cannot be null
+     */
+    public SnapshotBlockReader(World world) {
+        if (world == null) throw new IllegalArgumentException();
+
+        this.world = world;
+        this.maxHeight = world.getMaxHeight();
+        this.sections = (maxHeight + 15) >> 4;
+    }
+
+    /**
+     * Gets the world this reads from
+     *
+     * @return the world
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the ID of a block
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     *
+     * @return the block ID, 0 (air) if the Y coordinate is out of the world, or
+     * {@link #UNKNOWN} if the block's chunk is not loaded
+     */
+    public int getTypeId(int x, int y, int z) {
+        if (y < 0 || y >= maxHeight) return 0;
+
+        ChunkView view = view(x >> 4, z >> 4, false);
+        return view == null ? UNKNOWN : view.getTypeId(x & 0xF, y, z & 0xF);
+    }
+
+    /**
+     * Gets the type of a block
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     *
+     * @return the block type, AIR if the Y coordinate is out of the world, or null if the
+     * block's chunk is not loaded
+     */
+    public Material getType(int x, int y, int z) {
+        int id = getTypeId(x, y, z);
+        if (id == UNKNOWN) return null;
+
+        Material material = Material.getMaterial(id);
+        return material == null ? Material.AIR : material;
+    }
+
+    /**
+     * Reads the IDs of every block in a box. The result is laid out with X varying
+     * fastest, then Z, then Y: index ((y - minY) * length + (z - minZ)) * width + (x - minX).
+     * Blocks in chunks which are not loaded are read as {@link #UNKNOWN}.
+     *
+     * @param minX   the lowest X coordinate
+     * @param minY   the lowest Y coordinate
+     * @param minZ   the lowest Z coordinate
+     * @param width  the size along X
+     * @param height the size along Y
+     * @param length the size along Z
+     * @param out    the array to read into, at least width * height * length long. Cannot be null.
+     */
+    public void read(int minX, int minY, int minZ, int width, int height, int length, short[] out) {
+        if (out == null || width < 0 || height < 0 || length < 0 || out.length < width * height * length)
+            throw new IllegalArgumentException();
+
+        for (int z = 0; z < length; z++) {
+            for (int x = 0; x < width; x++) {
+                int wx = minX + x, wz = minZ + z;
+                ChunkView view = view(wx >> 4, wz >> 4, false);
+
+                for (int y = 0; y < height; y++) {
+                    int wy = minY + y, id = 0;
+                    if (wy >= 0 && wy < maxHeight) {
+                        if (view == null) id = UNKNOWN;
+                        else if (!view.isSectionEmpty(wy >> 4)) id = view.getTypeId(wx & 0xF, wy, wz & 0xF);
+                    }
+                    out[(y * length + z) * width + x] = (short) id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the highest block at or below a position which is not air. Sections
+     * which are entirely air are skipped over.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate to start at
+     * @param z the Z coordinate
+     *
+     * @return the Y coordinate of the block found, or -1 if there is only air below or the
+     * column's chunk is not loaded
+     */
+    public int getHighestNonAirBelow(int x, int y, int z) {
+        ChunkView view = view(x >> 4, z >> 4, false);
+        if (view == null || view.snapshot == null) return -1;
+
+        for (y = Math.min(y, maxHeight - 1); y >= 0; y--) {
+            if (view.isSectionEmpty(y >> 4)) {
+                y &= ~0xF; // Skip to the bottom of the section, the loop steps below it
+                continue;
+            }
+            if (view.getTypeId(x & 0xF, y, z & 0xF) != 0) return y;
+        }
+        return -1;
+    }
+
+    /**
+     * Records a block written by the caller, so that later reads return it
+     *
+     * @param x  the X coordinate
+     * @param y  the Y coordinate
+     * @param z  the Z coordinate
+     * @param id the block ID written
+     */
+    public void set(int x, int y, int z, int id) {
+        if (y < 0 || y >= maxHeight) return;
+
+        view(x >> 4, z >> 4, true).set(x & 0xF, y, z & 0xF, id);
+    }
+
+    // Gets the view of a chunk, capturing its snapshot if it is loaded. Views of chunks which are
+    // not loaded are only made when writing to them, otherwise null is returned.
+    private ChunkView view(int chunkX, int chunkZ, boolean create) {
+        long key = ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        ChunkView view = last != null && lastKey == key ? last : chunks.get(key);
+
+        if (view == null || view.snapshot == null) {
+            boolean loaded = world.isChunkLoaded(chunkX, chunkZ); // Never load or generate a chunk to read it
+            if (view == null) {
+                if (!loaded && !create) return null;
+                view = new ChunkView(sections);
+                chunks.put(key, view);
+            }
+            if (loaded) view.snapshot = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(true, false, false);
+        }
+
+        lastKey = key;
+        last = view;
+        return view;
+    }
+
+    private static final class ChunkView {
+
+        private ChunkSnapshot snapshot; // Null until the chunk is loaded
+        private final short[][] written; // Per section, the ID written + 1, or 0 if none
+
+        ChunkView(int sections) {
+            this.written = new short[sections][];
+        }
+
+        int getTypeId(int x, int y, int z) {
+            short[] section = written[y >> 4];
+            if (section != null) {
+                int id = section[ChunkBuffer.index(x, y, z)];
+                if (id != 0) return id - 1;
+            }
+            return snapshot == null ? UNKNOWN : snapshot.getBlockTypeId(x, y, z);
+        }
+
+        boolean isSectionEmpty(int section) {
+            return written[section] == null && snapshot != null && snapshot.isSectionEmpty(section);
+        }
+
+        void set(int x, int y, int z, int id) {
+            short[] section = written[y >> 4];
+            if (section == null) section = written[y >> 4] = new short[4096];
+            section[ChunkBuffer.index(x, y, z)] = (short) (id + 1);
+        }
+    }
+}
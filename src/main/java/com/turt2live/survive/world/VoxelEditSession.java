@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+/**
+ * Represents an edit of a box of blocks held in a local buffer. The box is
+ * copied from a {@link com.turt2live.survive.world.SnapshotBlockReader} when
+ * the session is opened; reads and writes then only touch the buffer, and
+ * {@link #commit()} writes the blocks which changed to the world in one pass.
+ * <p/>
+ * The commit is applied as one {@link com.turt2live.survive.world.BlockChangeBatch}.
+ * Reads outside the box fall through to the reader. Writes outside the box
+ * are added to the same batch as they are made, so a session never loses a
+ * write and all of its writes land together.
+ * Only block IDs are kept: committed blocks have a data value of 0.
+ *
+ * @author turt2live
+ */
+public final class VoxelEditSession {
+
+    public static final int NORTH = 1; // -Z
+    public static final int SOUTH = 1 << 1; // +Z
+    public static final int EAST = 1 << 2; // +X
+    public static final int WEST = 1 << 3; // -X
+    public static final int UP = 1 << 4;
+    public static final int DOWN = 1 << 5;
+    public static final int HORIZONTAL = NORTH | SOUTH | EAST | WEST;
+
+    private final SnapshotBlockReader blocks;
+    private final int minX, minY, minZ, width, height, length;
+    private final short[] original, current;
+    private final long[] dirty;
+    private BlockChangeBatch outside; // Writes outside the box, becomes the commit's batch
+    private boolean committed = false;
+
+    /**
+     * Opens a new edit session over a box. The coordinates are inclusive and are
+     * clipped to the height of the world.
+     *
+     * @param blocks the reader to copy from, cannot be null
+     * @param minX   the lowest X coordinate
+     * @param minY   the lowest Y coordinate
+     * @param minZ   the lowest Z coordinate
+     * @param maxX   the highest X coordinate
+     * @param maxY   the highest Y coordinate
+     * @param maxZ   the highest Z coordinate
+     */
+    public VoxelEditSession(SnapshotBlockReader blocks, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (blocks == null || maxX < minX || maxZ < minZ) throw new IllegalArgumentException();
+
+        minY = Math.max(minY, 0);
+        maxY = Math.min(maxY, blocks.getWorld().getMaxHeight() - 1);
+
+        this.blocks = blocks;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.width = maxX - minX + 1;
+        this.height = Math.max(maxY - minY + 1, 0);
+        this.length = maxZ - minZ + 1;
+
+        int volume = width * height * length;
+        original = new short[volume];
+        blocks.read(minX, minY, minZ, width, height, length, original);
+        current = original.clone();
+        dirty = new long[(volume + 63) >> 6];
+    }
+
+    private int index(int x, int y, int z) {
+        x -= minX;
+        y -= minY;
+        z -= minZ;
+        if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= length) return -1;
+        return (y * length + z) * width + x;
+    }
+
+    /**
+     * Gets the ID of a block, as edited so far
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     *
+     * @return the block ID, or {@link com.turt2live.survive.world.SnapshotBlockReader#UNKNOWN}
+     * if the block's chunk is not loaded
+     */
+    public int getTypeId(int x, int y, int z) {
+        int index = index(x, y, z);
+        return index < 0 ? blocks.getTypeId(x, y, z) : current[index];
+    }
+
+    /**
+     * Sets the ID of a block. Blocks inside the box are written on {@link #commit()}.
+     *
+     * @param x  the X coordinate
+     * @param y  the Y coordinate
+     * @param z  the Z coordinate
+     * @param id the block ID
+     */
+    public void setTypeId(int x, int y, int z, int id) {
+        if (committed) throw new IllegalStateException("Session already committed");
+
+        int index = index(x, y, z);
+        if (index < 0) {
+            if (outside == null) outside = new BlockChangeBatch(blocks.getWorld());
+            outside.setBlock(x, y, z, id, (byte) 0);
+            blocks.set(x, y, z, id);
+            return;
+        }
+
+        current[index] = (short) id;
+        dirty[index >> 6] |= 1L << index;
+    }
+
+    /**
+     * Gets which of the six neighbours of a block are not air. Neighbours in chunks which
+     * are not loaded count as not air, so callers keep clear of them.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     *
+     * @return a mask of {@link #NORTH}, {@link #SOUTH}, {@link #EAST}, {@link #WEST}, {@link #UP} and {@link #DOWN}
+     */
+    public int getNonAirNeighbours(int x, int y, int z) {
+        int mask = 0;
+        if (getTypeId(x, y, z - 1) != 0) mask |= NORTH;
+        if (getTypeId(x, y, z + 1) != 0) mask |= SOUTH;
+        if (getTypeId(x + 1, y, z) != 0) mask |= EAST;
+        if (getTypeId(x - 1, y, z) != 0) mask |= WEST;
+        if (getTypeId(x, y + 1, z) != 0) mask |= UP;
+        if (getTypeId(x, y - 1, z) != 0) mask |= DOWN;
+        return mask;
+    }
+
+    /**
+     * Writes every block which changed to the world. Blocks written back to their
+     * original ID are skipped. A session can only be committed once.
+     *
+     * @return the number of blocks written
+     */
+    public int commit() {
+        BlockChangeBatch batch = toBatch();
+        batch.apply();
+        return batch.size();
+    }
+
+    /**
+     * Adds every block which changed to a placement job, to be written when the job
+     * runs. The reader sees the changes right away. A session can only be committed once.
+     *
+     * @param job the job to add the changes to, cannot be null
+     *
+     * @return the number of blocks to be written
+     */
+    public int commit(PlacementJob job) {
+        if (job == null) throw new IllegalArgumentException();
+
+        BlockChangeBatch batch = toBatch();
+        job.add(batch);
+        return batch.size();
+    }
+
+    private BlockChangeBatch toBatch() {
+        if (committed) throw new IllegalStateException("Session already committed");
+        committed = true;
+
+        BlockChangeBatch batch = outside == null ? new BlockChangeBatch(blocks.getWorld()) : outside;
+        for (int word = 0; word < dirty.length; word++) {
+            long bits = dirty[word];
+            while (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (current[index] == original[index]) continue;
+
+                int x = minX + index % width;
+                int z = minZ + (index / width) % length;
+                int y = minY + index / (width * length);
+                batch.setBlock(x, y, z, current[index], (byte) 0);
+                blocks.set(x, y, z, current[index]);
+            }
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure;
+
+import com.turt2live.survive.util.ChunkBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class SphereTemplateTest {
+
+    @Test
+    public void TestCached() {
+        Assert.assertSame(SphereTemplate.get(6), SphereTemplate.get(6));
+    }
+
+    @Test
+    public void TestSmallest() {
+        SphereTemplate template = SphereTemplate.get(1);
+
+        Assert.assertEquals(1, template.getVolume());
+        Assert.assertEquals(0, template.getInterior().length);
+        Assert.assertEquals(SphereTemplate.CENTER, template.getShell()[0]);
+    }
+
+    @Test
+    public void TestVoxels() {
+        int radius = 6;
+        SphereTemplate template = SphereTemplate.get(radius);
+        Set<Integer> seen = new HashSet<Integer>();
+
+        for (int voxel : template.getShell()) {
+            int d = distanceSquared(voxel);
+            Assert.assertTrue(d < radius * radius && d >= (radius - 1) * (radius - 1));
+            Assert.assertTrue(seen.add(voxel));
+        }
+        for (int voxel : template.getInterior()) {
+            Assert.assertTrue(distanceSquared(voxel) < (radius - 1) * (radius - 1));
+            Assert.assertTrue(seen.add(voxel));
+        }
+
+        // Every offset closer than the radius is included exactly once
+        int expected = 0;
+        for (int x = -radius; x <= radius; x++) {
+            for (int y = -radius; y <= radius; y++) {
+                for (int z = -radius; z <= radius; z++) {
+                    if (x * x + y * y + z * z < radius * radius) expected++;
+                }
+            }
+        }
+        Assert.assertEquals(expected, template.getVolume());
+        Assert.assertTrue(seen.contains(SphereTemplate.CENTER));
+    }
+
+    private int distanceSquared(int voxel) {
+        int x = ChunkBuffer.unpackX(voxel), y = ChunkBuffer.unpackY(voxel), z = ChunkBuffer.unpackZ(voxel);
+        return x * x + y * y + z * z;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PackedSchematicTest {
+
+    @Test
+    public void TestRoundTrip() {
+        TestSchematic schematic = new TestSchematic(7, 5, 9);
+        Random random = new Random(42);
+        for (int x = 0; x < 7; x++) {
+            for (int y = 0; y < 5; y++) {
+                for (int z = 0; z < 9; z++) {
+                    schematic.set(x, y, z, random.nextInt(6) * 40, random.nextInt(3));
+                }
+            }
+        }
+
+        PackedSchematic packed = PackedSchematic.pack(schematic);
+        Assert.assertEquals(7, packed.getWidth());
+        Assert.assertEquals(5, packed.getHeight());
+        Assert.assertEquals(9, packed.getLength());
+        Assert.assertArrayEquals(schematic.getBlockIds(), packed.getBlockIds());
+        Assert.assertArrayEquals(schematic.getBlockData(), packed.getBlockData());
+        Assert.assertTrue(packed.getPaletteSize() <= 18);
+        Assert.assertEquals(5, packed.getBitsPerBlock());
+    }
+
+    @Test
+    public void TestSingleBlockType() {
+        PackedSchematic packed = PackedSchematic.pack(new TestSchematic(16, 16, 16));
+
+        Assert.assertEquals(1, packed.getPaletteSize());
+        Assert.assertEquals(1, packed.getBitsPerBlock());
+        Assert.assertEquals(4096, packed.getBlockIds().length);
+        Assert.assertTrue(packed.getMemoryUsage() < 1024);
+    }
+
+    @Test
+    public void TestHighIds() {
+        TestSchematic schematic = new TestSchematic(2, 1, 1);
+        schematic.set(0, 0, 0, 255, 15);
+        schematic.set(1, 0, 0, 128, 7);
+
+        PackedSchematic packed = PackedSchematic.pack(schematic);
+        Assert.assertArrayEquals(schematic.getBlockIds(), packed.getBlockIds());
+        Assert.assertArrayEquals(schematic.getBlockData(), packed.getBlockData());
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SchematicCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("schematic-cache", "");
+        Assert.assertTrue(directory.delete());
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void TestRoundTrip() throws IOException {
+        TestSchematic schematic = new TestSchematic(3, 2, 4);
+        schematic.set(0, 0, 0, 1, 0);
+        schematic.set(2, 1, 3, 98, 3);
+
+        byte[] source = {1, 2, 3};
+        SchematicCache cache = new SchematicCache(directory);
+        Assert.assertNull(cache.get(source));
+
+        Schematic cached = cache.put(source, schematic);
+        Assert.assertArrayEquals(schematic.getBlockIds(), cached.getBlockIds());
+        Assert.assertArrayEquals(schematic.getBlockData(), cached.getBlockData());
+
+        Schematic mapped = new SchematicCache(directory).get(source);
+        Assert.assertNotNull(mapped);
+        Assert.assertEquals(3, mapped.getWidth());
+        Assert.assertEquals(2, mapped.getHeight());
+        Assert.assertEquals(4, mapped.getLength());
+        Assert.assertArrayEquals(schematic.getBlockIds(), mapped.getBlockIds());
+        Assert.assertArrayEquals(schematic.getBlockData(), mapped.getBlockData());
+
+        // Views read the mapping in place
+        MappedSchematic view = (MappedSchematic) mapped;
+        Assert.assertEquals(24, view.getBlockIdBuffer().capacity());
+        Assert.assertEquals(98, view.getBlockIdBuffer().get(23));
+        Assert.assertEquals(3, view.getBlockDataBuffer().get(23));
+        Assert.assertTrue(view.getBlockIdBuffer().isReadOnly());
+        Assert.assertEquals(2, SchematicPastePlan.compile(mapped).getBlockCount());
+    }
+
+    @Test
+    public void TestSourceChange() throws IOException {
+        SchematicCache cache = new SchematicCache(directory);
+        cache.put(new byte[]{1}, new TestSchematic(1, 1, 1));
+
+        Assert.assertNull(new SchematicCache(directory).get(new byte[]{2}));
+    }
+
+    @Test
+    public void TestPrune() throws IOException {
+        new SchematicCache(directory).put(new byte[]{1}, new TestSchematic(1, 1, 1));
+
+        SchematicCache cache = new SchematicCache(directory);
+        cache.put(new byte[]{2}, new TestSchematic(1, 1, 1));
+        Assert.assertEquals(1, cache.prune());
+        Assert.assertNull(cache.get(new byte[]{1}));
+        Assert.assertNotNull(cache.get(new byte[]{2}));
+    }
+
+    @Test
+    public void TestSamePutTwice() throws IOException {
+        TestSchematic schematic = new TestSchematic(2, 1, 1);
+        schematic.set(1, 0, 0, 4, 0);
+
+        // The same source listed twice is stored twice, the entry must survive both
+        SchematicCache cache = new SchematicCache(directory);
+        cache.put(new byte[]{1}, schematic);
+        Schematic cached = cache.put(new byte[]{1}, schematic);
+        Assert.assertArrayEquals(schematic.getBlockIds(), cached.getBlockIds());
+
+        File[] files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length); // No temporary files left behind
+    }
+}
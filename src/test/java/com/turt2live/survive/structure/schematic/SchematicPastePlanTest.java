@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class SchematicPastePlanTest {
+
+    @Test
+    public void TestIndexAndTrim() {
+        // 20 wide so runs cross a cell border, 2 high, 3 long
+        TestSchematic schematic = new TestSchematic(20, 2, 3);
+        schematic.set(2, 1, 1, 5, 3);
+        schematic.set(3, 1, 1, 6, 0);
+        schematic.set(19, 1, 2, 7, 1);
+
+        SchematicPastePlan plan = SchematicPastePlan.compile(schematic);
+        Assert.assertEquals(3, plan.getBlockCount());
+
+        Map<String, Integer> pasted = pasteAll(plan, 100, 60, 200);
+        Assert.assertEquals(3, pasted.size());
+        Assert.assertEquals(Integer.valueOf((5 << 4) | 3), pasted.get("102,61,201"));
+        Assert.assertEquals(Integer.valueOf(6 << 4), pasted.get("103,61,201"));
+        Assert.assertEquals(Integer.valueOf((7 << 4) | 1), pasted.get("119,61,202"));
+
+        Assert.assertEquals(6, plan.getMinChunkX(100));
+        Assert.assertEquals(7, plan.getMaxChunkX(100));
+    }
+
+    @Test
+    public void TestChunkSplit() {
+        TestSchematic schematic = new TestSchematic(40, 1, 1);
+        for (int x = 0; x < 40; x++) {
+            schematic.set(x, 0, 0, 1, 0);
+        }
+        SchematicPastePlan plan = SchematicPastePlan.compile(schematic);
+
+        // Starting at x=10, chunks 0, 1, 2 and 3 get 6, 16, 16 and 2 blocks
+        final int[] counts = new int[4];
+        for (int cx = plan.getMinChunkX(10); cx <= plan.getMaxChunkX(10); cx++) {
+            counts[cx] = plan.paste(10, 0, 0, cx, 0, 256, new SchematicPastePlan.BlockSink() {
+                @Override
+                public void setBlock(int x, int y, int z, int id, byte data) {
+                }
+            });
+        }
+        Assert.assertArrayEquals(new int[] {6, 16, 16, 2}, counts);
+        Assert.assertEquals(0, plan.paste(10, 0, 0, 0, 1, 256, null));
+    }
+
+    @Test
+    public void TestEmpty() {
+        SchematicPastePlan plan = SchematicPastePlan.compile(new TestSchematic(4, 4, 4));
+
+        Assert.assertTrue(plan.isEmpty());
+        Assert.assertEquals(0, plan.paste(0, 0, 0, 0, 0, 256, null));
+    }
+
+    private Map<String, Integer> pasteAll(SchematicPastePlan plan, int ox, int oy, int oz) {
+        final Map<String, Integer> pasted = new HashMap<String, Integer>();
+        SchematicPastePlan.BlockSink sink = new SchematicPastePlan.BlockSink() {
+            @Override
+            public void setBlock(int x, int y, int z, int id, byte data) {
+                pasted.put(x + "," + y + "," + z, (id << 4) | data);
+            }
+        };
+
+        for (int cx = plan.getMinChunkX(ox); cx <= plan.getMaxChunkX(ox); cx++) {
+            for (int cz = plan.getMinChunkZ(oz); cz <= plan.getMaxChunkZ(oz); cz++) {
+                plan.paste(ox, oy, oz, cx, cz, 256, sink);
+            }
+        }
+        return pasted;
+    }
+}
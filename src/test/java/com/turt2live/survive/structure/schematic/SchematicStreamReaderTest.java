@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class SchematicStreamReaderTest {
+
+    @Test
+    public void TestRead() throws IOException {
+        byte[] blocks = {1, 2, 3, 4, 5, 6};
+        byte[] data = {0, 1, 0, 1, 0, 15};
+
+        Schematic schematic = new EmbeddedSchematic(new ByteArrayInputStream(write(blocks, data, true)));
+        Assert.assertEquals(3, schematic.getWidth());
+        Assert.assertEquals(1, schematic.getHeight());
+        Assert.assertEquals(2, schematic.getLength());
+        Assert.assertArrayEquals(blocks, schematic.getBlockIds());
+        Assert.assertArrayEquals(data, schematic.getBlockData());
+    }
+
+    @Test
+    public void TestUncompressed() throws IOException {
+        byte[] blocks = {7, 0, 0, 0, 0, 7};
+
+        SchematicStreamReader reader = new SchematicStreamReader(new ByteArrayInputStream(write(blocks, new byte[6], false)));
+        reader.read();
+        Assert.assertArrayEquals(blocks, reader.getBlockIds());
+    }
+
+    @Test(expected = IOException.class)
+    public void TestMissingBlocks() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SchematicStreamReader.TAG_COMPOUND);
+        out.writeUTF("Schematic");
+        shortTag(out, "Width", 1);
+        shortTag(out, "Height", 1);
+        shortTag(out, "Length", 1);
+        out.writeByte(SchematicStreamReader.TAG_END);
+        out.close();
+
+        new SchematicStreamReader(new ByteArrayInputStream(bytes.toByteArray())).read();
+    }
+
+    private static byte[] write(byte[] blocks, byte[] data, boolean gzip) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream target = gzip ? new GZIPOutputStream(bytes) : bytes;
+        DataOutputStream out = new DataOutputStream(target);
+
+        out.writeByte(SchematicStreamReader.TAG_COMPOUND);
+        out.writeUTF("Schematic");
+
+        shortTag(out, "Height", 1);
+        out.writeByte(SchematicStreamReader.TAG_STRING);
+        out.writeUTF("Materials");
+        out.writeUTF("Alpha");
+
+        // Tags which should be skipped over: a list of compounds, an int array, numbers
+        out.writeByte(SchematicStreamReader.TAG_LIST);
+        out.writeUTF("TileEntities");
+        out.writeByte(SchematicStreamReader.TAG_COMPOUND);
+        out.writeInt(2);
+        for (int i = 0; i < 2; i++) {
+            out.writeByte(SchematicStreamReader.TAG_STRING);
+            out.writeUTF("id");
+            out.writeUTF("Chest");
+            out.writeByte(SchematicStreamReader.TAG_INT_ARRAY);
+            out.writeUTF("Pos");
+            out.writeInt(3);
+            out.writeInt(1);
+            out.writeInt(2);
+            out.writeInt(3);
+            out.writeByte(SchematicStreamReader.TAG_LIST);
+            out.writeUTF("Items");
+            out.writeByte(SchematicStreamReader.TAG_DOUBLE);
+            out.writeInt(2);
+            out.writeDouble(1);
+            out.writeDouble(2);
+            out.writeByte(SchematicStreamReader.TAG_END);
+        }
+        out.writeByte(SchematicStreamReader.TAG_LONG);
+        out.writeUTF("Seed");
+        out.writeLong(42);
+        out.writeByte(SchematicStreamReader.TAG_BYTE_ARRAY);
+        out.writeUTF("AddBlocks");
+        out.writeInt(3);
+        out.write(new byte[3]);
+
+        out.writeByte(SchematicStreamReader.TAG_BYTE_ARRAY);
+        out.writeUTF("Blocks");
+        out.writeInt(blocks.length);
+        out.write(blocks);
+        shortTag(out, "Width", 3);
+        out.writeByte(SchematicStreamReader.TAG_BYTE_ARRAY);
+        out.writeUTF("Data");
+        out.writeInt(data.length);
+        out.write(data);
+        shortTag(out, "Length", 2);
+
+        out.writeByte(SchematicStreamReader.TAG_END);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void shortTag(DataOutputStream out, String name, int value) throws IOException {
+        out.writeByte(SchematicStreamReader.TAG_SHORT);
+        out.writeUTF(name);
+        out.writeShort(value);
+    }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SchematicTransformTest {
+
+    @Test
+    public void TestRotate() {
+        // 3 wide, 1 high, 2 long with a marker in the north-west corner
+        TestSchematic schematic = new TestSchematic(3, 1, 2);
+        schematic.set(0, 0, 0, 1, 0);
+        schematic.set(2, 0, 1, 2, 0);
+
+        Schematic rotated = SchematicTransform.ROTATE_90.apply(schematic);
+        Assert.assertEquals(2, rotated.getWidth());
+        Assert.assertEquals(3, rotated.getLength());
+        // A clockwise turn moves the north-west corner to the north-east
+        Assert.assertEquals(1, rotated.getBlockIds()[1]);
+        Assert.assertEquals(2, rotated.getBlockIds()[2 * 2]);
+    }
+
+    @Test
+    public void TestMirror() {
+        TestSchematic schematic = new TestSchematic(3, 2, 1);
+        schematic.set(0, 1, 0, 5, 3);
+
+        Schematic mirrored = SchematicTransform.MIRROR_X.apply(schematic);
+        Assert.assertEquals(5, mirrored.getBlockIds()[3 + 2]);
+        Assert.assertEquals(3, mirrored.getBlockData()[3 + 2]);
+    }
+
+    @Test
+    public void TestInverses() {
+        TestSchematic schematic = new TestSchematic(4, 3, 5);
+        for (int i = 0; i < 4 * 3 * 5; i++) {
+            schematic.set(i % 4, i / 20, (i / 4) % 5, i, i & 0xF);
+        }
+
+        Schematic turned = schematic;
+        for (int i = 0; i < 4; i++) {
+            turned = SchematicTransform.ROTATE_90.apply(turned);
+        }
+        Assert.assertArrayEquals(schematic.getBlockIds(), turned.getBlockIds());
+
+        Schematic half = SchematicTransform.ROTATE_180.apply(schematic);
+        Assert.assertArrayEquals(SchematicTransform.ROTATE_90.apply(SchematicTransform.ROTATE_90.apply(schematic)).getBlockIds(), half.getBlockIds());
+
+        Schematic flipped = SchematicTransform.MIRROR_X.apply(SchematicTransform.MIRROR_X.apply(schematic));
+        Assert.assertArrayEquals(schematic.getBlockIds(), flipped.getBlockIds());
+
+        // Mirroring X then turning twice is mirroring Z
+        Schematic mirrorZ = SchematicTransform.MIRROR_X_ROTATE_180.apply(schematic);
+        Assert.assertEquals(schematic.getBlockIds()[(1 * 5 + 0) * 4 + 2], mirrorZ.getBlockIds()[(1 * 5 + 4) * 4 + 2]);
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.structure.schematic;
+
+class TestSchematic implements Schematic {
+
+    private final int w, h, l;
+    private final byte[] ids, data;
+
+    TestSchematic(int w, int h, int l) {
+        this.w = w;
+        this.h = h;
+        this.l = l;
+        ids = new byte[w * h * l];
+        data = new byte[w * h * l];
+    }
+
+    void set(int x, int y, int z, int id, int d) {
+        int index = (y * l + z) * w + x;
+        ids[index] = (byte) id;
+        data[index] = (byte) d;
+    }
+
+    @Override
+    public byte[] getBlockData() {
+        return data;
+    }
+
+    @Override
+    public byte[] getBlockIds() {
+        return ids;
+    }
+
+    @Override
+    public int getWidth() {
+        return w;
+    }
+
+    @Override
+    public int getHeight() {
+        return h;
+    }
+
+    @Override
+    public int getLength() {
+        return l;
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.bukkit.Material;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ChunkHeatSourcesTest {
+
+    @Test
+    public void TestMatchesFullScan() {
+        // Enough sources to push the lower sections past the list limit
+        Random random = new Random(7);
+        HeatSource[] values = HeatSource.values();
+        HeatSource[][][] blocks = new HeatSource[16][64][16];
+        ChunkHeatSources sources = new ChunkHeatSources(2, -1, 4);
+
+        for (int i = 0; i < 600; i++) {
+            int x = random.nextInt(16), y = random.nextInt(40), z = random.nextInt(16);
+            HeatSource source = random.nextInt(5) == 0 ? null : values[random.nextInt(values.length)];
+            blocks[x][y][z] = source;
+            sources.set(x, y, z, source);
+        }
+
+        int expected = 0;
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 64; y++) {
+                for (int z = 0; z < 16; z++) {
+                    if (blocks[x][y][z] != null) expected++;
+                }
+            }
+        }
+        Assert.assertEquals(expected, sources.size());
+
+        for (int i = 0; i < 50; i++) {
+            double px = 32 + random.nextDouble() * 16, py = random.nextDouble() * 48, pz = -16 + random.nextDouble() * 16;
+            int bx = (int) Math.floor(px), by = (int) Math.floor(py), bz = (int) Math.floor(pz);
+
+            double warmth = 0, cold = 0;
+            int found = 0;
+            for (int x = bx - 3; x < bx + 3; x++) {
+                for (int y = by - 3; y < by + 3; y++) {
+                    for (int z = bz - 3; z < bz + 3; z++) {
+                        int lx = x - 32, lz = z + 16;
+                        if (lx < 0 || lx > 15 || lz < 0 || lz > 15 || y < 0 || y > 63) continue;
+
+                        HeatSource source = blocks[lx][y][lz];
+                        if (source == null) continue;
+
+                        double distance = (x - px) * (x - px) + (y - py) * (y - py) + (z - pz) * (z - pz);
+                        warmth += distance * source.getWarmth();
+                        cold += distance * source.getCold();
+                        found++;
+                    }
+                }
+            }
+
+            double[] out = new double[2];
+            Assert.assertEquals(found, sources.accumulate(bx - 3, by - 3, bz - 3, bx + 2, by + 2, bz + 2, px, py, pz, out));
+            Assert.assertEquals(warmth, out[0], 1e-9);
+            Assert.assertEquals(cold, out[1], 1e-9);
+        }
+    }
+
+    @Test
+    public void TestFromId() {
+        Assert.assertEquals(HeatSource.LAVA, HeatSource.fromId(Material.STATIONARY_LAVA.getId()));
+        Assert.assertEquals(HeatSource.WATER, HeatSource.fromId(Material.WATER.getId()));
+        Assert.assertNull(HeatSource.fromId(Material.STONE.getId()));
+        Assert.assertNull(HeatSource.fromId(-1));
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class PlayerStateStoreTest {
+
+    @Test
+    public void TestSlotsReused() {
+        PlayerStateStore store = new PlayerStateStore();
+        UUID[] players = new UUID[40];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+            Assert.assertEquals(i, store.create(players[i]).getSlot());
+        }
+
+        PlayerSurvivalState released = store.release(players[7]);
+        Assert.assertEquals(7, released.getSlot());
+        Assert.assertNull(store.get(7));
+        Assert.assertNull(store.get(players[7]));
+        Assert.assertNull(store.release(players[7]));
+
+        PlayerSurvivalState state = store.create(UUID.randomUUID());
+        Assert.assertEquals(7, state.getSlot());
+        Assert.assertSame(state, store.get(7));
+        Assert.assertEquals(40, store.getCapacity());
+        Assert.assertEquals(40, store.size());
+    }
+
+    @Test
+    public void TestCreateTwice() {
+        PlayerStateStore store = new PlayerStateStore();
+        UUID player = UUID.randomUUID();
+        Assert.assertSame(store.create(player), store.create(player));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void TestDirtyFlags() {
+        PlayerSurvivalState state = new PlayerStateStore().create(UUID.randomUUID());
+        state.setTemperature(1); // Unchanged
+        Assert.assertFalse(state.isDirty(PlayerSurvivalState.DIRTY_TEMPERATURE));
+
+        state.setTemperature(5);
+        state.setWorldTemperature(20);
+        Assert.assertTrue(state.isDirty(PlayerSurvivalState.DIRTY_TEMPERATURE));
+        state.clean(PlayerSurvivalState.DIRTY_TEMPERATURE);
+        Assert.assertFalse(state.isDirty(PlayerSurvivalState.DIRTY_TEMPERATURE));
+        Assert.assertTrue(state.isDirty(PlayerSurvivalState.DIRTY_WORLD_TEMPERATURE));
+    }
+
+    @Test
+    public void TestDistance() {
+        PlayerSurvivalState state = new PlayerStateStore().create(UUID.randomUUID());
+        state.addDistance(1.5);
+        state.addDistance(2);
+        Assert.assertEquals(3.5, state.takeDistance(), 0);
+        Assert.assertEquals(0, state.getDistance(), 0);
+    }
+
+    @Test
+    public void TestTrack() {
+        PlayerSurvivalState state = new PlayerStateStore().create(UUID.randomUUID());
+        UUID world = UUID.randomUUID();
+
+        Assert.assertEquals(0, state.track(world, 0, 64, 0), 0); // First sample
+        Assert.assertEquals(5, state.track(world, 3, 64, 4), 1e-9);
+        Assert.assertEquals(0, state.track(world, 3, 64, 4.0001), 0); // Jitter
+        Assert.assertEquals(0, state.track(world, 300, 64, 4), 0); // Teleport
+        Assert.assertEquals(0, state.track(UUID.randomUUID(), 301, 64, 4), 0); // Changed worlds
+        Assert.assertEquals(5, state.getDistance(), 1e-9);
+    }
+
+    @Test
+    public void TestTrackMatchesPath() {
+        // A walk sampled once a tick should count the whole path
+        PlayerSurvivalState state = new PlayerStateStore().create(UUID.randomUUID());
+        UUID world = UUID.randomUUID();
+        double x = 0, z = 0, expected = 0;
+        state.track(world, x, 64, z);
+        for (int tick = 0; tick < 200; tick++) {
+            double angle = tick * 0.1;
+            double dx = Math.cos(angle) * 0.2158, dz = Math.sin(angle) * 0.2158; // Walking speed
+            x += dx;
+            z += dz;
+            expected += Math.sqrt(dx * dx + dz * dz);
+            state.track(world, x, 64, z);
+        }
+        Assert.assertEquals(expected, state.takeDistance(), 1e-9);
+    }
+}
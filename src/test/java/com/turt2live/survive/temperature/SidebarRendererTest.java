@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SidebarRendererTest {
+
+    private SidebarRenderer renderer;
+    private int body, world;
+
+    @Before
+    public void setUp() {
+        renderer = new SidebarRenderer(2);
+        body = renderer.addEntry("Body", 3, -21, 15);
+        world = renderer.addEntry("World", 1);
+    }
+
+    @Test
+    public void TestUnchanged() {
+        Assert.assertFalse(renderer.update(0, body, 0));
+        Assert.assertFalse(renderer.update(0, world, 0));
+        Assert.assertEquals(0, renderer.getPendingCount());
+        Assert.assertEquals(2, renderer.getSavedCount());
+    }
+
+    @Test
+    public void TestMinimumChange() {
+        Assert.assertFalse(renderer.update(0, body, 2));
+        Assert.assertTrue(renderer.update(0, body, 3));
+        Assert.assertTrue(renderer.update(0, world, 1)); // Any change
+        Assert.assertEquals(2, renderer.getPendingCount());
+    }
+
+    @Test
+    public void TestThresholdCrossing() {
+        renderer.update(0, body, 14);
+        Assert.assertEquals(1, renderer.flush());
+
+        Assert.assertFalse(renderer.update(0, body, 13));
+        Assert.assertTrue(renderer.update(0, body, 16)); // Starts sweating
+        Assert.assertEquals(0, renderer.getSentCount()); // Nobody attached to send to
+    }
+
+    @Test
+    public void TestCoalesced() {
+        renderer.update(3, body, 10);
+        renderer.update(3, body, 20);
+        Assert.assertEquals(1, renderer.getPendingCount());
+
+        // Back near what is shown, nothing needs sending any more
+        renderer.update(3, body, 1);
+        Assert.assertEquals(0, renderer.getPendingCount());
+        Assert.assertEquals(3, renderer.getSavedCount());
+    }
+
+    @Test
+    public void TestRateLimited() {
+        for (int slot = 0; slot < 5; slot++) {
+            renderer.update(slot, world, 20);
+        }
+        Assert.assertEquals(5, renderer.getPendingCount());
+
+        // Nobody is attached so nothing is sent, but each flush still only takes two
+        renderer.flush();
+        Assert.assertEquals(3, renderer.getPendingCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void TestEntryAfterAttach() {
+        renderer.update(0, body, 5);
+        renderer.addEntry("Late", 1);
+    }
+}
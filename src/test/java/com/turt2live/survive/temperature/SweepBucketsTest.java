@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class SweepBucketsTest {
+
+    private static void assertEven(SweepBuckets buckets) {
+        int min = Integer.MAX_VALUE, max = 0;
+        for (int i = 0; i < buckets.getBucketCount(); i++) {
+            min = Math.min(min, buckets.getPlayerCount(i));
+            max = Math.max(max, buckets.getPlayerCount(i));
+        }
+        Assert.assertTrue(max - min <= 1);
+    }
+
+    @Test
+    public void TestSpread() {
+        SweepBuckets buckets = new SweepBuckets(20);
+        for (int i = 0; i < 45; i++) {
+            buckets.add(UUID.randomUUID());
+            assertEven(buckets);
+        }
+        Assert.assertEquals(3, buckets.getPlayerCount(0));
+        Assert.assertEquals(2, buckets.getPlayerCount(19));
+    }
+
+    @Test
+    public void TestRebalanceOnRemove() {
+        SweepBuckets buckets = new SweepBuckets(4);
+        List<UUID> players = new ArrayList<UUID>();
+        for (int i = 0; i < 12; i++) {
+            UUID player = UUID.randomUUID();
+            players.add(player);
+            buckets.add(player);
+        }
+
+        // Empty out whole buckets' worth of players, the rest should move over
+        for (int i = 0; i < 12; i += 4) {
+            Assert.assertTrue(buckets.remove(players.get(i)));
+            assertEven(buckets);
+        }
+        Assert.assertFalse(buckets.remove(players.get(0)));
+
+        int total = 0;
+        for (int i = 0; i < buckets.getBucketCount(); i++) {
+            total += buckets.getPlayerCount(i);
+        }
+        Assert.assertEquals(9, total);
+    }
+
+    @Test
+    public void TestAddTwice() {
+        SweepBuckets buckets = new SweepBuckets(3);
+        UUID player = UUID.randomUUID();
+        int bucket = buckets.add(player);
+        buckets.add(UUID.randomUUID());
+        Assert.assertEquals(bucket, buckets.add(player));
+        Assert.assertEquals(1, buckets.getPlayers(bucket).size());
+    }
+
+    @Test
+    public void TestTimings() {
+        SweepBuckets buckets = new SweepBuckets(2);
+        buckets.record(1, 100);
+        buckets.record(1, 300);
+        Assert.assertEquals(200, buckets.getAverageNanos(1));
+        Assert.assertEquals(300, buckets.getMaxNanos(1));
+        Assert.assertEquals(0, buckets.getAverageNanos(0));
+
+        buckets.resetTimings();
+        Assert.assertEquals(0, buckets.getMaxNanos(1));
+    }
+}
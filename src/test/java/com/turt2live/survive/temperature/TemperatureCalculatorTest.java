@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.temperature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class TemperatureCalculatorTest {
+
+    private static TemperatureSample sample(long time, boolean dead, double itemWeight, double armorWeight, double distance, int current) {
+        return new TemperatureSample(UUID.randomUUID(), UUID.randomUUID(), 0, 64, 0, time, dead, itemWeight, armorWeight, distance, current);
+    }
+
+    @Test
+    public void TestWorldTemperature() {
+        Assert.assertEquals(20, TemperatureCalculator.getWorldTemperature(6000));
+        Assert.assertEquals(-20, TemperatureCalculator.getWorldTemperature(18000));
+        Assert.assertEquals(0, TemperatureCalculator.getWorldTemperature(0));
+        Assert.assertEquals(0, TemperatureCalculator.getWorldTemperature(12000));
+    }
+
+    @Test
+    public void TestSources() {
+        // Noon: (round(50 - 20) + 0 + 0) / 10 + 20 / 2
+        Assert.assertEquals(13, TemperatureCalculator.calculate(sample(6000, false, 0, 0, 0, 10), 50, 20));
+    }
+
+    @Test
+    public void TestWeightAndDistance() {
+        // Sunrise: (0 + round(100 * 0.2) + round(100 * 1.4)) / 10
+        Assert.assertEquals(16, TemperatureCalculator.calculate(sample(0, false, 0.2, 1.4, 100, 12), 0, 0));
+    }
+
+    @Test
+    public void TestNeverZero() {
+        Assert.assertEquals(1, TemperatureCalculator.calculate(sample(0, false, 0, 0, 0, 1), 0, 0));
+    }
+
+    @Test
+    public void TestSteadyChange() {
+        // Night: -20 / 2 = -10, which is more than 8 away from 5
+        Assert.assertEquals(-4, TemperatureCalculator.calculate(sample(18000, false, 0, 0, 0, 5), 0, 0));
+    }
+
+    @Test
+    public void TestDead() {
+        Assert.assertEquals(TemperatureCalculator.DEAD, TemperatureCalculator.calculate(sample(6000, true, 1, 1, 50, -128), 100, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestNullSample() {
+        TemperatureCalculator.calculate(null, 0, 0);
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class AliasSamplerTest {
+
+    private static final int SAMPLES = 200000;
+    private static final double DELTA = 0.01;
+
+    @Test
+    public void TestWeights() {
+        double[] odds = frequencies(new AliasSampler(new double[] {1, 0, 3}), new ChunkRandom(1));
+
+        Assert.assertEquals(0.25, odds[0], DELTA);
+        Assert.assertEquals(0.0, odds[1], 0);
+        Assert.assertEquals(0.75, odds[2], DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestNoWeight() {
+        new AliasSampler(new double[] {0, 0});
+    }
+
+    @Test
+    public void TestRollOnceSimple() {
+        // Below 0.5 both are eligible, above only the second one is
+        double[] odds = frequencies(AliasSampler.fromRollOnce(new double[] {0.5, 1.0}), new ChunkRandom(2));
+
+        Assert.assertEquals(0.25, odds[0], DELTA);
+        Assert.assertEquals(0.75, odds[1], DELTA);
+        Assert.assertEquals(0.0, odds[2], DELTA);
+    }
+
+    @Test
+    public void TestRollOnceMatchesScan() {
+        double[] chances = {0.15, 0.15, 0.05, 0.02, 0.10, 2.0, 0.10};
+        double[] odds = frequencies(AliasSampler.fromRollOnce(chances), new ChunkRandom(3));
+
+        // Run the original scanning method for comparison
+        Random random = new Random(4);
+        double[] expected = new double[chances.length + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            double choice = random.nextDouble();
+            List<Integer> eligible = new ArrayList<Integer>();
+            for (int c = 0; c < chances.length; c++) {
+                if (chances[c] >= 0 && chances[c] <= 1 && choice <= chances[c]) eligible.add(c);
+            }
+            if (eligible.isEmpty()) expected[chances.length]++;
+            else expected[eligible.get(random.nextInt(eligible.size()))]++;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i] / SAMPLES, odds[i], DELTA);
+        }
+        Assert.assertEquals(0.0, odds[5], 0);
+    }
+
+    private double[] frequencies(AliasSampler sampler, Random random) {
+        double[] counts = new double[sampler.size()];
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[sampler.sample(random)]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] /= SAMPLES;
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkBufferTest {
+
+    @Test
+    public void TestSetGet() {
+        ChunkBuffer buffer = new ChunkBuffer(256);
+
+        buffer.setBlock(3, 70, 9, 42);
+        Assert.assertEquals(42, buffer.getBlock(3, 70, 9));
+        Assert.assertEquals(0, buffer.getBlock(3, 71, 9));
+
+        // Out of bounds is ignored
+        buffer.setBlock(16, 70, 9, 1);
+        buffer.setBlock(0, 256, 0, 1);
+        Assert.assertEquals(1L << 4, buffer.getTouchedSections());
+        Assert.assertTrue(buffer.isTouched(4));
+        Assert.assertFalse(buffer.isTouched(5));
+    }
+
+    @Test
+    public void TestFillBox() {
+        ChunkBuffer buffer = new ChunkBuffer(256);
+
+        Assert.assertEquals(2 * 3 * 4, buffer.fillBox(1, 14, 2, 3, 17, 6, 5));
+        Assert.assertEquals(5, buffer.getBlock(1, 14, 2));
+        Assert.assertEquals(5, buffer.getBlock(2, 16, 5));
+        Assert.assertEquals(0, buffer.getBlock(3, 16, 5));
+        Assert.assertEquals(0, buffer.getBlock(2, 17, 5));
+        Assert.assertEquals(0, buffer.getBlock(2, 16, 6));
+        Assert.assertEquals(3L, buffer.getTouchedSections() >> 0 & 3L);
+
+        // Clipped and full rows
+        Assert.assertEquals(16 * 16, buffer.fillBox(-5, 0, -5, 20, 1, 20, 7));
+        Assert.assertEquals(7, buffer.getBlock(15, 0, 15));
+    }
+
+    @Test
+    public void TestColumns() {
+        ChunkBuffer buffer = new ChunkBuffer(256);
+
+        Assert.assertEquals(4, buffer.fillColumn(2, 2, 252, 260, 9));
+        Assert.assertEquals(9, buffer.getBlock(2, 255, 2));
+    }
+
+    @Test
+    public void TestVoxels() {
+        int[] voxels = {
+                ChunkBuffer.packOffset(0, 0, 0),
+                ChunkBuffer.packOffset(-1, 2, 3),
+                ChunkBuffer.packOffset(-20, 0, 0)
+        };
+
+        Assert.assertEquals(-1, ChunkBuffer.unpackX(voxels[1]));
+        Assert.assertEquals(2, ChunkBuffer.unpackY(voxels[1]));
+        Assert.assertEquals(3, ChunkBuffer.unpackZ(voxels[1]));
+
+        ChunkBuffer buffer = new ChunkBuffer(256);
+        Assert.assertEquals(1, buffer.writeVoxels(0, 64, 0, voxels, 1));
+        Assert.assertEquals(1, buffer.getBlock(0, 64, 0));
+
+        Assert.assertEquals(1, buffer.writeVoxels(20, 64, 0, voxels, 2));
+        Assert.assertEquals(2, buffer.getBlock(0, 64, 0));
+    }
+
+}
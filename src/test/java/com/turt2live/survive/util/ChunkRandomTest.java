@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkRandomTest {
+
+    private static final long SEED = 8675309L;
+    private static final long SALT = 42L;
+
+    @Test
+    public void TestReproducible() {
+        ChunkRandom first = new ChunkRandom(SEED, 3, -7, SALT);
+        ChunkRandom second = new ChunkRandom(SEED, 3, -7, SALT);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(first.nextLong(), second.nextLong());
+        }
+    }
+
+    @Test
+    public void TestOrderIndependent() {
+        long expected = new ChunkRandom(SEED, 10, 10, SALT).nextLong();
+
+        ChunkRandom random = new ChunkRandom(SEED, 0, 0, SALT);
+        random.nextLong();
+        random.reset(SEED, 10, 10, SALT);
+
+        Assert.assertEquals(expected, random.nextLong());
+    }
+
+    @Test
+    public void TestStreamsDiffer() {
+        long base = new ChunkRandom(SEED, 0, 0, SALT).nextLong();
+
+        Assert.assertNotEquals(base, new ChunkRandom(SEED, 1, 0, SALT).nextLong());
+        Assert.assertNotEquals(base, new ChunkRandom(SEED, 0, 1, SALT).nextLong());
+        Assert.assertNotEquals(base, new ChunkRandom(SEED, 0, 0, SALT + 1).nextLong());
+        Assert.assertNotEquals(base, new ChunkRandom(SEED + 1, 0, 0, SALT).nextLong());
+    }
+
+    @Test
+    public void TestBounds() {
+        ChunkRandom random = new ChunkRandom(SEED);
+        int[] counts = new int[7];
+
+        for (int i = 0; i < 7000; i++) {
+            int value = random.nextInt(7);
+            Assert.assertTrue(value >= 0 && value < 7);
+            counts[value]++;
+
+            double d = random.nextDouble();
+            Assert.assertTrue(d >= 0 && d < 1);
+        }
+
+        for (int count : counts) {
+            Assert.assertTrue(count > 800 && count < 1200);
+        }
+    }
+
+    @Test
+    public void TestSlice() {
+        Assert.assertEquals(0, ChunkRandom.slice(0L, 16, 22));
+        Assert.assertEquals(21, ChunkRandom.slice(0xFFFFL, 16, 22));
+        Assert.assertEquals(21, ChunkRandom.slice(-1L, 16, 22));
+    }
+
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockWritesTest {
+
+    @Test
+    public void TestRoundTrip() {
+        long write = BlockWrites.pack(15, 4095, 7, 4095, (byte) 15);
+        Assert.assertEquals(15, BlockWrites.x(write));
+        Assert.assertEquals(4095, BlockWrites.y(write));
+        Assert.assertEquals(7, BlockWrites.z(write));
+        Assert.assertEquals(4095, BlockWrites.id(write));
+        Assert.assertEquals(15, BlockWrites.data(write));
+
+        write = BlockWrites.pack(3, 64, 12, 98, (byte) 2);
+        Assert.assertEquals(3, BlockWrites.x(write));
+        Assert.assertEquals(64, BlockWrites.y(write));
+        Assert.assertEquals(12, BlockWrites.z(write));
+        Assert.assertEquals(98, BlockWrites.id(write));
+        Assert.assertEquals(2, BlockWrites.data(write));
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2014 Travis Ralston (turt2live)
+ *
+ * This software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package com.turt2live.survive.world;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class RegionFilesTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("region-files", "");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void TestHasChunk() throws IOException {
+        // Region -1,0 holds chunks -32..-1, 0..31; mark chunk (-3, 5) as saved
+        RandomAccessFile region = new RandomAccessFile(new File(directory, "r.-1.0.mca"), "rw");
+        try {
+            region.setLength(8192);
+            region.seek(4 * ((-3 & 31) + 5 * 32));
+            region.writeInt(2 << 8 | 1);
+        } finally {
+            region.close();
+        }
+
+        RegionFiles regions = new RegionFiles(directory);
+        Assert.assertTrue(regions.hasChunk(-3, 5));
+        Assert.assertFalse(regions.hasChunk(-4, 5));
+        Assert.assertFalse(regions.hasChunk(3, 5)); // No region file
+    }
+
+    @Test
+    public void TestMissingFolder() {
+        Assert.assertFalse(new RegionFiles(new File(directory, "missing")).hasChunk(0, 0));
+    }
+}